@@ -0,0 +1,178 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.BufferedReader;
+import java.util.Vector;
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * The name=value pairs and samples of a GCStress CSV output file
+ */
+class CSVData
+{
+  String memlabel = "";
+  String delaylabel = "";
+  Vector<CSVSample> samples = new Vector<CSVSample>();
+  Map<String,String> key_values = new HashMap<String, String>();
+
+  /**
+   * parse a CSV file written by GCStress
+   */
+  static CSVData read(String file)
+  {
+    String line;
+
+    File csvFile = new File(file);
+    if (!csvFile.exists() || !csvFile.isFile() || !csvFile.canRead())
+    {
+      System.err.println("Cannot read "+file);
+      System.exit(-1);
+    }
+
+    CSVData csvd = new CSVData();
+
+    try
+    {
+      BufferedReader br = new BufferedReader(new FileReader(csvFile));
+      while ((line = br.readLine()) != null)
+      {
+        String[] vals = line.split(",");
+        if (vals[0].indexOf('=') != -1 && vals.length == 2)
+        {
+          // add name=value to map
+          csvd.putKeyValue(vals[0].replace("\"", "").replace("=", ""),
+                           vals[1].replace("\"", ""));
+        }
+        else if (vals.length >= 3)
+        {
+          // must be labels or data
+          if (vals[0].indexOf('"') != -1)
+          {
+            // labels
+            csvd.setMemlabel(vals[1].replace("\"", ""));
+            csvd.setDelaylabel(vals[2].replace("\"", ""));
+          }
+          else
+          {
+            // data, older files have no gc time
+            long gc = (vals.length > 3) ? Long.parseLong(vals[3]) : -1L;
+            CSVSample sample = new CSVSample(Long.parseLong(vals[0]),
+                                             Integer.parseInt(vals[1]),
+                                             Integer.parseInt(vals[2]),
+                                             gc);
+            if (vals.length > 7)
+            {
+              // cgroup columns
+              sample.throttled_periods = Long.parseLong(vals[4]);
+              sample.throttled_micros = Long.parseLong(vals[5]);
+              sample.runq_micros = Long.parseLong(vals[6]);
+              sample.load = Double.parseDouble(vals[7]);
+            }
+            csvd.addSample(sample);
+          }
+        }
+        else
+        {
+          System.err.println("Read error: "+line);
+          System.exit(-1);
+        }
+      }
+      br.close();
+    }
+    catch (Exception e)
+    {
+      System.err.println("Read error: "+e);
+      e.printStackTrace();
+      System.exit(-1);
+    }
+    return csvd;
+  }
+
+  void putKeyValue(String key, String value)
+  {
+    key_values.put(key, value);
+  }
+
+  String getValue(String key)
+  {
+    String value = key_values.get(key);
+    if (value == null)
+    {
+      value = "";
+    }
+    return value;
+  }
+
+  /**
+   * get the delay histogram, from the file if it has one, otherwise built
+   * from the samples
+   */
+  DelayHistogram getHistogram()
+  {
+    String encoded = getValue("Histogram");
+    if (encoded.length() > 0)
+    {
+      return DelayHistogram.decode(encoded);
+    }
+    DelayHistogram dh = new DelayHistogram();
+    for (int i = 0; i < samples.size(); i++)
+    {
+      dh.record(samples.elementAt(i).delay_micros);
+    }
+    return dh;
+  }
+
+  int getSize()
+  {
+    return samples.size();
+  }
+
+  void addSample(CSVSample sample)
+  {
+    samples.add(sample);
+  }
+
+  boolean hasGCTime()
+  {
+    return samples.size() > 0 && samples.firstElement().gc_millis >= 0;
+  }
+
+  boolean hasThrottling()
+  {
+    return samples.size() > 0 && samples.firstElement().throttled_micros >= 0;
+  }
+
+  CSVSample getSample(int index)
+  {
+    return samples.elementAt(index);
+  }
+
+  void setMemlabel(String label)
+  {
+    this.memlabel = label;
+  }
+
+  String getMemlabel()
+  {
+    return memlabel;
+  }
+
+  void setDelaylabel(String label)
+  {
+    this.delaylabel = label;
+  }
+
+  String getDelaylabel()
+  {
+    return delaylabel;
+  }
+
+}
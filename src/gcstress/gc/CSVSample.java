@@ -0,0 +1,32 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+/**
+ * One sample row of a GCStress CSV output file
+ */
+class CSVSample
+{
+  long timestamp;
+  int mem_kilos;
+  int delay_micros;
+  long gc_millis;
+
+  // cgroup columns, -1 if the run was not sampled with --cgroup
+  long throttled_periods = -1L;
+  long throttled_micros = -1L;
+  long runq_micros = -1L;
+  double load = -1.0d;
+
+  CSVSample(long time, int mem, int delay, long gc)
+  {
+    timestamp = time;
+    mem_kilos = mem;
+    delay_micros = delay;
+    gc_millis = gc;
+  }
+}
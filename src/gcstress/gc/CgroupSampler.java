@@ -0,0 +1,259 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Samples the run queue wait of our threads and the load average on a low
+ * priority thread, and finds the cpu.stat file with the CPU throttling of
+ * our cgroup. Only local procfs and sysfs files are read:
+ *
+ *   /proc/self/task/<tid>/schedstat  nanoseconds waiting on a run queue
+ *   /proc/loadavg                    1 minute load average
+ *   cgroup v2  /sys/fs/cgroup/<path>/cpu.stat   nr_throttled, throttled_usec
+ *   cgroup v1  /sys/fs/cgroup/cpu/<path>/cpu.stat  nr_throttled,
+ *                                                  throttled_time (ns)
+ *
+ * A throttled cgroup also stops this thread, so its snapshots would lag
+ * the throttling. The sampler therefore owns only the run queue and load
+ * readings; the timer thread reads the small cpu.stat file itself with
+ * readThrottling() right after it wakes up, so the throttling lands on
+ * the delay it caused.
+ */
+class CgroupSampler implements Runnable
+{
+  private static final String CGROUP_ROOT = "/sys/fs/cgroup";
+
+  private String cpu_stat;
+  private long interval_millis;
+  private volatile boolean stop = false;
+  private volatile CgroupSnapshot latest;
+
+  CgroupSampler(long interval_millis)
+  {
+    this.interval_millis = interval_millis;
+    cpu_stat = findCpuStat();
+    latest = sample();
+  }
+
+  /**
+   * start sampling on a daemon thread at min priority
+   */
+  Thread start()
+  {
+    Thread thrd = new Thread(this, "GCStress Cgroup Sampler");
+    thrd.setPriority(Thread.MIN_PRIORITY);
+    thrd.setDaemon(true);
+    thrd.start();
+    return thrd;
+  }
+
+  void stop()
+  {
+    stop = true;
+  }
+
+  public void run()
+  {
+    while (!stop)
+    {
+      try
+      {
+        Thread.sleep(interval_millis);
+      }
+      catch (InterruptedException ie)
+      {
+        return;
+      }
+      latest = sample();
+    }
+  }
+
+  /**
+   * the most recent snapshot, never null
+   */
+  CgroupSnapshot getLatest()
+  {
+    return latest;
+  }
+
+  /**
+   * the cpu.stat file with throttling counters, null if none was found
+   */
+  String getCpuStatFile()
+  {
+    return cpu_stat;
+  }
+
+  /**
+   * read the throttled periods and nanoseconds from cpu.stat on the
+   * calling thread, -1 where not available
+   */
+  long[] readThrottling()
+  {
+    long throttling[] = { -1L, -1L };
+    if (cpu_stat != null)
+    {
+      for (String line : readLines(cpu_stat))
+      {
+        String kv[] = line.split(" ");
+        if (kv.length != 2)
+        {
+          continue;
+        }
+        if (kv[0].equals("nr_throttled"))
+        {
+          throttling[0] = parseLong(kv[1]);
+        }
+        else if (kv[0].equals("throttled_usec"))
+        {
+          throttling[1] = parseLong(kv[1]) * 1000L;
+        }
+        else if (kv[0].equals("throttled_time"))
+        {
+          throttling[1] = parseLong(kv[1]);
+        }
+      }
+    }
+    return throttling;
+  }
+
+  //************************************************************************
+  //*                      PRIVATE METHODS                                 *
+  //************************************************************************
+
+  private CgroupSnapshot sample()
+  {
+    // the run queue wait of every thread, so exited threads are lost
+    long runq_nanos = -1L;
+    String tids[] = new File("/proc/self/task").list();
+    if (tids != null)
+    {
+      for (String tid : tids)
+      {
+        List<String> lines = readLines("/proc/self/task/" + tid +
+                                       "/schedstat");
+        if (lines.size() > 0)
+        {
+          String vals[] = lines.get(0).split(" ");
+          if (vals.length >= 2)
+          {
+            runq_nanos = Math.max(runq_nanos, 0L) + parseLong(vals[1]);
+          }
+        }
+      }
+    }
+
+    double load = -1.0d;
+    List<String> lines = readLines("/proc/loadavg");
+    if (lines.size() > 0)
+    {
+      try
+      {
+        load = Double.parseDouble(lines.get(0).split(" ")[0]);
+      }
+      catch (NumberFormatException nfe)
+      {
+      }
+    }
+    return new CgroupSnapshot(runq_nanos, load);
+  }
+
+  /**
+   * find the cpu.stat of our cgroup from /proc/self/cgroup, trying the
+   * unified v2 hierarchy first
+   */
+  private static String findCpuStat()
+  {
+    List<String> candidates = new ArrayList<String>();
+    List<String> v1 = new ArrayList<String>();
+    for (String line : readLines("/proc/self/cgroup"))
+    {
+      // hierarchy-id:controllers:path
+      String parts[] = line.split(":", 3);
+      if (parts.length != 3)
+      {
+        continue;
+      }
+      String path = parts[2].equals("/") ? "" : parts[2];
+      if (parts[1].length() == 0)
+      {
+        candidates.add(CGROUP_ROOT + path + "/cpu.stat");
+      }
+      for (String controller : parts[1].split(","))
+      {
+        if (controller.equals("cpu"))
+        {
+          v1.add(CGROUP_ROOT + "/cpu" + path + "/cpu.stat");
+          v1.add(CGROUP_ROOT + "/" + parts[1] + path + "/cpu.stat");
+        }
+      }
+    }
+    candidates.addAll(v1);
+    // inside a container the cgroup paths may not be mounted as named
+    candidates.add(CGROUP_ROOT + "/cpu.stat");
+    candidates.add(CGROUP_ROOT + "/cpu/cpu.stat");
+    for (String file : candidates)
+    {
+      for (String line : readLines(file))
+      {
+        if (line.startsWith("nr_throttled "))
+        {
+          return file;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * read the lines of a small file, none if it cannot be read
+   */
+  private static List<String> readLines(String file)
+  {
+    List<String> lines = new ArrayList<String>();
+    try
+    {
+      BufferedReader br = new BufferedReader(new FileReader(file));
+      try
+      {
+        String line;
+        while ((line = br.readLine()) != null)
+        {
+          lines.add(line.trim());
+        }
+      }
+      finally
+      {
+        br.close();
+      }
+    }
+    catch (IOException ioe)
+    {
+      // not Linux, or not in a cgroup with a cpu controller
+    }
+    return lines;
+  }
+
+  private static long parseLong(String str)
+  {
+    try
+    {
+      return Long.parseLong(str);
+    }
+    catch (NumberFormatException nfe)
+    {
+      return -1L;
+    }
+  }
+}
@@ -0,0 +1,23 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+/**
+ * The run queue and load counters at one point in time; -1 where not
+ * available
+ */
+class CgroupSnapshot
+{
+  final long runq_nanos;
+  final double load;
+
+  CgroupSnapshot(long runq_nanos, double load)
+  {
+    this.runq_nanos = runq_nanos;
+    this.load = load;
+  }
+}
@@ -0,0 +1,330 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * A mergeable log-linear histogram of delays in microseconds. Values
+ * below 256 are counted exactly; larger values fall into buckets with
+ * 128 sub-buckets per power of two, so a value is known within 1/128 of
+ * itself. Negative delays (a sleep that woke early) are counted by
+ * magnitude in a second set of buckets. Counts, sum, min and max are
+ * exact, so merging histograms loses nothing that a single histogram
+ * would have kept.
+ */
+class DelayHistogram
+{
+  private static final String FORMAT = "1";
+  private static final int SUB_BITS = 7;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int LINEAR = 2 * SUB_COUNT;
+  private static final int BUCKETS = LINEAR + (62 - SUB_BITS) * SUB_COUNT;
+
+  private long counts[] = new long[BUCKETS];
+  private long neg_counts[] = new long[BUCKETS];
+  private long total = 0L;
+  private long sum = 0L;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  void record(long value)
+  {
+    if (value >= 0)
+    {
+      counts[index(value)]++;
+    }
+    else
+    {
+      neg_counts[index(value == Long.MIN_VALUE ? Long.MAX_VALUE
+                                               : -value)]++;
+    }
+    total++;
+    sum += value;
+    if (value < min)
+    {
+      min = value;
+    }
+    if (value > max)
+    {
+      max = value;
+    }
+  }
+
+  /**
+   * add the counts of another histogram to this one
+   */
+  void add(DelayHistogram other)
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      counts[i] += other.counts[i];
+      neg_counts[i] += other.neg_counts[i];
+    }
+    total += other.total;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  void reset()
+  {
+    Arrays.fill(counts, 0L);
+    Arrays.fill(neg_counts, 0L);
+    total = 0L;
+    sum = 0L;
+    min = Long.MAX_VALUE;
+    max = Long.MIN_VALUE;
+  }
+
+  long getCount()
+  {
+    return total;
+  }
+
+  long getMin()
+  {
+    return (total == 0) ? 0L : min;
+  }
+
+  long getMax()
+  {
+    return (total == 0) ? 0L : max;
+  }
+
+  double getMean()
+  {
+    return (total == 0) ? 0.0d : (double)sum / (double)total;
+  }
+
+  /**
+   * get a percentile using the nearest rank, reported as the highest
+   * value of its bucket
+   */
+  long percentile(double pct)
+  {
+    if (total == 0)
+    {
+      return 0L;
+    }
+    long rank = (long)Math.ceil(pct / 100.0d * total);
+    rank = Math.max(1L, Math.min(total, rank));
+    long seen = 0L;
+    for (int i = BUCKETS - 1; i >= 0; i--)
+    {
+      seen += neg_counts[i];
+      if (seen >= rank)
+      {
+        return clamp(-lowValue(i));
+      }
+    }
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      seen += counts[i];
+      if (seen >= rank)
+      {
+        return clamp(highValue(i));
+      }
+    }
+    return max;
+  }
+
+  /**
+   * expand to one value per recorded delay, sorted, each reported as
+   * percentile() reports its bucket
+   */
+  long[] toSortedValues()
+  {
+    if (total > Integer.MAX_VALUE - 8)
+    {
+      throw new IllegalStateException("Too many delays to expand: "+total);
+    }
+    long values[] = new long[(int)total];
+    int pos = 0;
+    for (int i = BUCKETS - 1; i >= 0; i--)
+    {
+      Arrays.fill(values, pos, pos + (int)neg_counts[i],
+                  clamp(-lowValue(i)));
+      pos += (int)neg_counts[i];
+    }
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      Arrays.fill(values, pos, pos + (int)counts[i], clamp(highValue(i)));
+      pos += (int)counts[i];
+    }
+    return values;
+  }
+
+  /**
+   * serialize to a compact string without commas, suitable for a CSV
+   * value: a format version, then base64 of varints
+   */
+  String encode()
+  {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeVarLong(out, zigzag(getMin()));
+    writeVarLong(out, zigzag(getMax()));
+    writeVarLong(out, zigzag(sum));
+    writeBuckets(out, counts);
+    writeBuckets(out, neg_counts);
+    return FORMAT + ":" +
+      Base64.getEncoder().withoutPadding().encodeToString(out.toByteArray());
+  }
+
+  /**
+   * parse a string made by encode()
+   */
+  static DelayHistogram decode(String text)
+  {
+    int colon = text.indexOf(':');
+    if (colon == -1 || !text.substring(0, colon).equals(FORMAT))
+    {
+      throw new IllegalArgumentException("Unknown histogram format");
+    }
+    byte bytes[] = Base64.getDecoder().decode(text.substring(colon + 1));
+    int pos[] = new int[1];
+    DelayHistogram dh = new DelayHistogram();
+    long hmin = unzigzag(readVarLong(bytes, pos));
+    long hmax = unzigzag(readVarLong(bytes, pos));
+    dh.sum = unzigzag(readVarLong(bytes, pos));
+    dh.total = readBuckets(bytes, pos, dh.counts) +
+               readBuckets(bytes, pos, dh.neg_counts);
+    if (dh.total > 0)
+    {
+      dh.min = hmin;
+      dh.max = hmax;
+    }
+    return dh;
+  }
+
+  //************************************************************************
+  //*                      PRIVATE METHODS                                 *
+  //************************************************************************
+
+  private long clamp(long value)
+  {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private static int index(long value)
+  {
+    if (value < LINEAR)
+    {
+      return (int)value;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exp - SUB_BITS)) - SUB_COUNT;
+    return LINEAR + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+  }
+
+  private static long lowValue(int index)
+  {
+    if (index < LINEAR)
+    {
+      return index;
+    }
+    int exp = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+    long sub = (index - LINEAR) % SUB_COUNT + SUB_COUNT;
+    return sub << (exp - SUB_BITS);
+  }
+
+  private static long highValue(int index)
+  {
+    if (index < LINEAR)
+    {
+      return index;
+    }
+    int exp = (index - LINEAR) / SUB_COUNT + SUB_BITS + 1;
+    return lowValue(index) + (1L << (exp - SUB_BITS)) - 1;
+  }
+
+  /**
+   * write the non-zero buckets as a count of entries followed by
+   * index gap and count pairs
+   */
+  private static void writeBuckets(ByteArrayOutputStream out, long b[])
+  {
+    int nonzero = 0;
+    for (int i = 0; i < b.length; i++)
+    {
+      if (b[i] != 0)
+      {
+        nonzero++;
+      }
+    }
+    writeVarLong(out, nonzero);
+    int last = 0;
+    for (int i = 0; i < b.length; i++)
+    {
+      if (b[i] != 0)
+      {
+        writeVarLong(out, i - last);
+        writeVarLong(out, b[i]);
+        last = i;
+      }
+    }
+  }
+
+  private static long readBuckets(byte bytes[], int pos[], long b[])
+  {
+    long count = 0L;
+    long nonzero = readVarLong(bytes, pos);
+    int index = 0;
+    for (long i = 0; i < nonzero; i++)
+    {
+      index += (int)readVarLong(bytes, pos);
+      if (index < 0 || index >= b.length)
+      {
+        throw new IllegalArgumentException("Bad histogram bucket");
+      }
+      b[index] = readVarLong(bytes, pos);
+      count += b[index];
+    }
+    return count;
+  }
+
+  private static long zigzag(long value)
+  {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value)
+  {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value)
+  {
+    while ((value & ~0x7fL) != 0)
+    {
+      out.write((int)((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int)value);
+  }
+
+  private static long readVarLong(byte bytes[], int pos[])
+  {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      if (pos[0] >= bytes.length)
+      {
+        throw new IllegalArgumentException("Truncated histogram");
+      }
+      byte b = bytes[pos[0]++];
+      value |= (long)(b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Bad histogram varint");
+  }
+}
@@ -0,0 +1,360 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The cache hammered by GCHammer threads. The private cache is owned by
+ * one hammer; the others are shared by all hammers of a run.
+ */
+interface GCCache
+{
+  Object get(int key);
+
+  void put(int key, Object value);
+
+  Object remove(int key);
+
+  /**
+   * true if create() knows the cache name
+   */
+  static boolean isValid(String name)
+  {
+    return Arrays.asList("private", "sync", "striped", "chm", "clock")
+      .contains(name);
+  }
+
+  /**
+   * create a cache by name
+   */
+  static GCCache create(String name, int capacity)
+  {
+    if (name.equals("private"))
+    {
+      return new PrivateCache(capacity);
+    }
+    if (name.equals("sync"))
+    {
+      return new SyncCache(capacity);
+    }
+    if (name.equals("striped"))
+    {
+      return new StripedCache(capacity);
+    }
+    if (name.equals("chm"))
+    {
+      return new CHMCache(capacity);
+    }
+    if (name.equals("clock"))
+    {
+      return new ClockCache(capacity);
+    }
+    throw new IllegalArgumentException("Unknown cache: "+name);
+  }
+}
+
+/**
+ * An unsynchronized LRU cache for a single hammer
+ */
+class PrivateCache implements GCCache
+{
+  private LinkedHashMapWithCapacity<Integer,Object> map;
+
+  PrivateCache(int capacity)
+  {
+    map = new LinkedHashMapWithCapacity<>(capacity);
+  }
+
+  public Object get(int key)
+  {
+    return map.get(key);
+  }
+
+  public void put(int key, Object value)
+  {
+    map.put(key, value);
+  }
+
+  public Object remove(int key)
+  {
+    return map.remove(key);
+  }
+}
+
+/**
+ * An LRU cache behind one lock
+ */
+class SyncCache implements GCCache
+{
+  private LinkedHashMapWithCapacity<Integer,Object> map;
+
+  SyncCache(int capacity)
+  {
+    map = new LinkedHashMapWithCapacity<>(capacity);
+  }
+
+  public synchronized Object get(int key)
+  {
+    return map.get(key);
+  }
+
+  public synchronized void put(int key, Object value)
+  {
+    map.put(key, value);
+  }
+
+  public synchronized Object remove(int key)
+  {
+    return map.remove(key);
+  }
+}
+
+/**
+ * An LRU cache split into stripes with a lock each; eviction is LRU
+ * within a stripe
+ */
+class StripedCache implements GCCache
+{
+  private static final int STRIPES = 64;
+
+  private LinkedHashMapWithCapacity<Integer,Object> stripes[];
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  StripedCache(int capacity)
+  {
+    stripes = new LinkedHashMapWithCapacity[STRIPES];
+    for (int i = 0; i < STRIPES; i++)
+    {
+      stripes[i] = new LinkedHashMapWithCapacity<Integer,Object>(
+        Math.max(1, capacity / STRIPES));
+    }
+  }
+
+  public Object get(int key)
+  {
+    LinkedHashMapWithCapacity<Integer,Object> map = stripe(key);
+    synchronized (map)
+    {
+      return map.get(key);
+    }
+  }
+
+  public void put(int key, Object value)
+  {
+    LinkedHashMapWithCapacity<Integer,Object> map = stripe(key);
+    synchronized (map)
+    {
+      map.put(key, value);
+    }
+  }
+
+  public Object remove(int key)
+  {
+    LinkedHashMapWithCapacity<Integer,Object> map = stripe(key);
+    synchronized (map)
+    {
+      return map.remove(key);
+    }
+  }
+
+  private LinkedHashMapWithCapacity<Integer,Object> stripe(int key)
+  {
+    // spread the bits so neighbor keys use different stripes
+    int h = key * 0x9e3779b9;
+    return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+  }
+}
+
+/**
+ * A ConcurrentHashMap that evicts an arbitrary entry when it grows over
+ * capacity, an approximation of what concurrent caches do
+ */
+class CHMCache implements GCCache
+{
+  private int capacity;
+  private ConcurrentHashMap<Integer,Object> map;
+
+  CHMCache(int capacity)
+  {
+    this.capacity = capacity;
+    map = new ConcurrentHashMap<Integer,Object>(capacity);
+  }
+
+  public Object get(int key)
+  {
+    return map.get(key);
+  }
+
+  public void put(int key, Object value)
+  {
+    map.put(key, value);
+    if (map.size() > capacity)
+    {
+      Iterator<Integer> it = map.keySet().iterator();
+      if (it.hasNext())
+      {
+        it.next();
+        it.remove();
+      }
+    }
+  }
+
+  public Object remove(int key)
+  {
+    return map.remove(key);
+  }
+}
+
+/**
+ * A CLOCK cache: entries sit in a ring of slots replaced with CAS, and
+ * the clock hand gives referenced entries a second chance. There is no
+ * cache-wide lock; the key index is a ConcurrentHashMap. A node is
+ * indexed before it takes a slot, and a node removed from the index in
+ * between is marked dead, so the putter frees the slot again.
+ */
+class ClockCache implements GCCache
+{
+  private int capacity;
+  private ConcurrentHashMap<Integer,ClockNode> index;
+  private AtomicReferenceArray<ClockNode> slots;
+  private AtomicInteger hand = new AtomicInteger();
+
+  ClockCache(int capacity)
+  {
+    this.capacity = capacity;
+    index = new ConcurrentHashMap<Integer,ClockNode>(capacity);
+    slots = new AtomicReferenceArray<ClockNode>(capacity);
+  }
+
+  public Object get(int key)
+  {
+    ClockNode node = index.get(key);
+    if (node == null)
+    {
+      return null;
+    }
+    if (!node.referenced)
+    {
+      node.referenced = true;
+    }
+    return node.value;
+  }
+
+  public void put(int key, Object value)
+  {
+    ClockNode node = new ClockNode(key, value);
+    // index the node before it takes a slot, so a thread that evicts it
+    // from the slot always finds its index entry and removes it
+    ClockNode old = index.put(key, node);
+    if (old != null)
+    {
+      unlink(old);
+    }
+    while (true)
+    {
+      int slot = (hand.getAndIncrement() & 0x7fffffff) % capacity;
+      ClockNode cur = slots.get(slot);
+      node.slot = slot;
+      if (cur == null)
+      {
+        if (slots.compareAndSet(slot, null, node))
+        {
+          break;
+        }
+      }
+      else if (cur.referenced)
+      {
+        // second chance
+        cur.referenced = false;
+      }
+      else if (slots.compareAndSet(slot, cur, node))
+      {
+        index.remove(cur.key, cur);
+        break;
+      }
+    }
+    if (node.dead)
+    {
+      // removed or replaced while it looked for a slot
+      slots.compareAndSet(node.slot, node, null);
+    }
+  }
+
+  public Object remove(int key)
+  {
+    ClockNode node = index.remove(key);
+    if (node == null)
+    {
+      return null;
+    }
+    unlink(node);
+    return node.value;
+  }
+
+  /**
+   * take a node that left the index out of its slot; a node that has no
+   * slot yet sees dead once it gets one and leaves it again
+   */
+  private void unlink(ClockNode node)
+  {
+    node.dead = true;
+    int slot = node.slot;
+    if (slot >= 0)
+    {
+      slots.compareAndSet(slot, node, null);
+    }
+  }
+}
+
+/**
+ * An entry of the CLOCK cache
+ */
+class ClockNode
+{
+  final int key;
+  final Object value;
+  volatile boolean referenced;
+  // -1 until the node takes a slot
+  volatile int slot = -1;
+  // set when the node leaves the index, so put() drops it from its slot
+  volatile boolean dead;
+
+  ClockNode(int key, Object value)
+  {
+    this.key = key;
+    this.value = value;
+  }
+}
+
+/**
+ * A subclass of LinkedHashMap with a capacity
+ */
+class LinkedHashMapWithCapacity<K,V> extends LinkedHashMap<K,V> 
+{
+  private static final long serialVersionUID = 1L;
+
+  private int capacity;
+
+  public LinkedHashMapWithCapacity(int capacity) 
+  {
+    super(capacity, 0.75f, true);
+    this.capacity = capacity;
+  }
+
+  @Override
+  protected boolean removeEldestEntry(Map.Entry<K,V> eldest) 
+  {
+    return this.size() > this.capacity;
+  }
+}
@@ -7,11 +7,6 @@
 package gcstress.gc;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.BufferedReader;
-import java.util.Vector;
-import java.util.Map;
-import java.util.HashMap;
 import java.awt.Font;
 import java.awt.Color;
 
@@ -23,6 +18,8 @@ import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.axis.LogarithmicAxis;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.SeriesRenderingOrder;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.block.BlockBorder;
 import org.jfree.chart.plot.XYPlot;
@@ -38,6 +35,8 @@ import org.jfree.data.time.TimeSeries;
 import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.xy.IntervalXYDataset;
 import org.jfree.data.xy.XYDataset;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
 
 public class GCDelayGraph 
 {
@@ -57,6 +56,9 @@ public class GCDelayGraph
   {
     String opt_input = INPUT_CSV;
     String opt_chart = CHART_FILE;
+    String opt_mmu = null;
+    String opt_tiles = null;
+    String opt_renderer = "jfree";
     int opt_width = WIDTH;
     int opt_height = HEIGHT;
 
@@ -96,6 +98,34 @@ public class GCDelayGraph
           System.exit(-1);
         }
       }
+      else if (args[i].startsWith("--renderer="))
+      {
+        opt_renderer = args[i].substring(args[i].indexOf('=') + 1);
+        if (!opt_renderer.equals("jfree") && !opt_renderer.equals("raster"))
+        {
+          System.err.println("Bad renderer: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--mmu="))
+      {
+        try
+        {
+          opt_mmu = 
+            args[i].substring(args[i].indexOf('=') + 1);
+        }
+        catch (Exception e)
+        {
+          System.err.println("Bad mmu chart: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--tiles="))
+      {
+        opt_tiles = args[i].substring(args[i].indexOf('=') + 1);
+      }
       else if (args[i].startsWith("--width="))
       {
         try
@@ -135,7 +165,27 @@ public class GCDelayGraph
     System.out.println("Creating GC Stress Graph: input="+opt_input+" chart="+
                        opt_chart+" width="+opt_width+" height="+opt_height);
     // generate the chart
-    chartFromCSV(opt_input, opt_chart, opt_width, opt_height);
+    if (opt_renderer.equals("raster"))
+    {
+      GCRasterGraph.chartFromCSV(opt_input, opt_chart, opt_width, opt_height);
+    }
+    else
+    {
+      chartFromCSV(opt_input, opt_chart, opt_width, opt_height);
+    }
+    if (opt_mmu != null)
+    {
+      System.out.println("Creating GC MMU Graph: input="+opt_input+" chart="+
+                         opt_mmu+" width="+opt_width+" height="+opt_height);
+      mmuChartFromCSV(opt_input, opt_mmu, opt_width, opt_height);
+    }
+    if (opt_tiles != null)
+    {
+      System.out.println("Creating GC Stress Tiles: input="+opt_input+
+                         " output="+opt_tiles);
+      GCTileWriter.tilesFromCSV(opt_input, opt_tiles,
+                                GCTileWriter.TILE_SIZE);
+    }
   }
 
   /**
@@ -148,7 +198,7 @@ public class GCDelayGraph
   {
     // avoid using X11 display
     System.setProperty("java.awt.headless", "true");
-    CSVData csvd = parseCSV(input_file);
+    CSVData csvd = CSVData.read(input_file);
     JFreeChart chart = createChart(csvd);
     try
     {
@@ -161,72 +211,39 @@ public class GCDelayGraph
     }
   }
 
-  //************************************************************************
-  //*                      PRIVATE STATIC METHODS                          *
-  //************************************************************************
-
   /**
-   * parse the CSV input file
+   * generate a jpeg chart of minimum mutator utilization vs window size 
+   * from a CSV input file
    */
-  private static CSVData parseCSV(String file)
+  public static void mmuChartFromCSV(String input_file,
+                                     String output_file,
+                                     int width,
+                                     int height) 
   {
-    String line;
-
-    File csvFile = new File(file);
-    if (!csvFile.exists() || !csvFile.isFile() || !csvFile.canRead())
+    // avoid using X11 display
+    System.setProperty("java.awt.headless", "true");
+    CSVData csvd = CSVData.read(input_file);
+    if (!csvd.hasGCTime())
     {
-      System.err.println("Cannot read "+file);
+      System.err.println("No GC time samples in "+input_file);
       System.exit(-1);
     }
-
-    CSVData csvd = new CSVData();
-    
+    JFreeChart chart = createMMUChart(csvd);
     try
     {
-      BufferedReader br = new BufferedReader(new FileReader(csvFile));
-      while ((line = br.readLine()) != null)
-      {
-        String[] vals = line.split(",");
-        if (vals[0].indexOf('=') != -1 && vals.length == 2)
-        {
-          // add name=value to map
-          csvd.putKeyValue(vals[0].replace("\"", "").replace("=", ""), 
-                           vals[1].replace("\"", ""));
-        }
-        else if (vals.length == 3)
-        {
-          // must be labels or data
-          if (vals[0].indexOf('"') != -1)
-          {
-            // labels
-            csvd.setMemlabel(vals[1].replace("\"", ""));
-            csvd.setDelaylabel(vals[2].replace("\"", ""));
-          }
-          else
-          {
-            // data
-            csvd.addSample(new CSVSample(Long.parseLong(vals[0]),
-                                         Integer.parseInt(vals[1]),
-                                         Integer.parseInt(vals[2])));
-          }
-        }
-        else
-        {
-          System.err.println("Read error: "+line);
-          System.exit(-1);
-        }
-      }
-      br.close();
-    }                     
+      ChartUtils.saveChartAsJPEG(new File(output_file), chart, width, height);
+    }
     catch (Exception e)
     {
-      System.err.println("Read error: "+e);
-      e.printStackTrace();
+      System.err.println(e);
       System.exit(-1);
     }
-    return csvd;
   }
 
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
   private static void usage()
   {
     System.out.println("Usage: GCDelayGraph <options>");
@@ -234,6 +251,9 @@ public class GCDelayGraph
     System.out.println("  --help           print this message");
     System.out.println("  --input=<file>   set input csv file (gcstress.csv)");
     System.out.println("  --chart=<file>   set output chart file (gcstress.jpg)");
+    System.out.println("  --mmu=<file>     set output mmu chart file (none)");
+    System.out.println("  --renderer=<name> set chart renderer jfree or raster (jfree)");
+    System.out.println("  --tiles=<dir>    set output tile viewer directory (none)");
     System.out.println("  --width=<num>    set chart width (600)");
     System.out.println("  --height=<num>   set chart height (400)");
   }
@@ -272,6 +292,10 @@ public class GCDelayGraph
       "  MaxMemory: " + String.format("%.1f", mem_max) + " MB" +
       "  MaxDelay: " + String.format("%.6f", delay_max) + " sec" +
       "  MinDelay: " + String.format("%.6f", delay_min) + " sec";
+    if (csvd.hasThrottling())
+    {
+      summary += "  Throttled: " + csvd.getValue("Throttled Time") + " sec";
+    }
 
     TextTitle lt = new TextTitle(summary,
                                  new Font("SansSerif", Font.PLAIN, 12),
@@ -297,6 +321,8 @@ public class GCDelayGraph
     plot.setRangeAxis(1, rangeAxis2);
     plot.setDataset(1, createDelayDataset(csvd));
     plot.mapDatasetToRangeAxis(1, 1);
+    // draw the throttled bars over the delay bars
+    plot.setSeriesRenderingOrder(SeriesRenderingOrder.FORWARD);
     XYBarRenderer renderer2 = new XYBarRenderer(0.20);
     plot.setRenderer(1, renderer2);
     renderer2.setBarPainter(new StandardXYBarPainter());
@@ -304,6 +330,74 @@ public class GCDelayGraph
     return chart;
   }
 
+  /**
+   * create the minimum mutator utilization chart from the parsed CSV data
+   */
+  private static JFreeChart createMMUChart(CSVData csvd) 
+  {
+    int size = csvd.getSize();
+    long time_millis[] = new long[size];
+    long gc_millis[] = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      CSVSample sample = csvd.getSample(i);
+      time_millis[i] = sample.timestamp;
+      gc_millis[i] = sample.gc_millis;
+    }
+    MMUCurve mmu = MMUCurve.compute(time_millis, gc_millis, size);
+    XYSeries series1 = new XYSeries("Minimum Mutator Utilization");
+    for (int i = 0; i < mmu.size(); i++)
+    {
+      series1.add(mmu.getWindow(i), mmu.getUtilization(i));
+    }
+
+    JFreeChart chart = ChartFactory.createXYLineChart(
+      null,
+      "Window Seconds",
+      "Utilization",
+      new XYSeriesCollection(series1),
+      PlotOrientation.VERTICAL,
+      true,
+      true,
+      false
+    );
+    String title = csvd.getValue("Test") + ": "+ csvd.getValue("VM");
+    TextTitle tt = new TextTitle(title, 
+                                 new Font("SansSerif", Font.BOLD, 18));
+    chart.setTitle(tt);
+    String subtitle = csvd.getValue("Date");
+    TextTitle st = new TextTitle(subtitle,
+                                 new Font("SansSerif", Font.BOLD, 16));
+    chart.addSubtitle(st);
+
+    String summary = 
+      "Samples: " + csvd.getSize() + 
+      "  GCTime: " + csvd.getValue("GC Time") + " sec";
+    String overhead = csvd.getValue("GC CPU Overhead");
+    if (overhead.length() > 0)
+    {
+      summary += "  GCCPUOverhead: " + overhead + " %";
+    }
+    TextTitle lt = new TextTitle(summary,
+                                 new Font("SansSerif", Font.PLAIN, 12),
+                                 Color.black,
+                                 RectangleEdge.BOTTOM,
+                                 HorizontalAlignment.CENTER,
+                                 VerticalAlignment.BOTTOM,
+                                 RectangleInsets.ZERO_INSETS);
+    chart.addSubtitle(0, lt);
+    chart.getLegend().setFrame(new BlockBorder(1.0d, 1.0d, 1.0d, 1.0d));
+
+    XYPlot plot = (XYPlot) chart.getPlot();
+    LogarithmicAxis domainAxis = new LogarithmicAxis("Window Seconds");
+    domainAxis.setAllowNegativesFlag(false);
+    plot.setDomainAxis(domainAxis);
+    NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+    rangeAxis.setRange(0.0d, 1.0d);
+    rangeAxis.setNumberFormatOverride(new DecimalFormat("0.0"));
+    return chart;
+  }
+
   /**
    * create the memory usage data set from the CSV data
    */
@@ -333,85 +427,23 @@ public class GCDelayGraph
       series1.add(new FixedMillisecond(sample.timestamp), 
                   (double)sample.delay_micros / 1000000.0d);
     }
-    return new TimeSeriesCollection(series1);
-  }
-
-}
-
-//************************************************************************
-//*                      PACKAGE CLASSES                                 *
-//************************************************************************
-
-class CSVSample
-{
-  long timestamp;
-  int mem_kilos;
-  int delay_micros;
-
-  CSVSample(long time, int mem, int delay)
-  {
-    timestamp = time;
-    mem_kilos = mem;
-    delay_micros = delay;
-  }
-}
-
-class CSVData
-{
-  String memlabel = "";
-  String delaylabel = "";
-  Vector<CSVSample> samples = new Vector<CSVSample>();
-  Map<String,String> key_values = new HashMap<String, String>();
-
-  void putKeyValue(String key, String value)
-  {
-    key_values.put(key, value);
-  }
-
-  String getValue(String key)
-  {
-    String value = key_values.get(key);
-    if (value == null)
+    TimeSeriesCollection tsc = new TimeSeriesCollection(series1);
+    if (csvd.hasThrottling())
     {
-      value = "";
+      // cgroup throttling drawn over the delay it may explain
+      TimeSeries series2 = new TimeSeries("Throttled");
+      for (int i = 0; i < size; i++)
+      {
+        CSVSample sample = csvd.getSample(i);
+        if (sample.throttled_micros > 0)
+        {
+          series2.add(new FixedMillisecond(sample.timestamp), 
+                      (double)sample.throttled_micros / 1000000.0d);
+        }
+      }
+      tsc.addSeries(series2);
     }
-    return value;
-  }
-
-  int getSize()
-  {
-    return samples.size();
-  }
-
-  void addSample(CSVSample sample)
-  {
-    samples.add(sample);
-  }
-
-  CSVSample getSample(int index)
-  {
-    return samples.elementAt(index);
-  }
-
-  void setMemlabel(String label)
-  {
-    this.memlabel = label;
-  }
-
-  String getMemlabel()
-  {
-    return memlabel;
-  }
-
-  void setDelaylabel(String label)
-  {
-    this.delaylabel = label;
-  }
-
-  String getDelaylabel()
-  {
-    return delaylabel;
+    return tsc;
   }
 
 }
-
@@ -0,0 +1,178 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.nio.IntBuffer;
+import java.util.SplittableRandom;
+
+/**
+ * The GCHammer class mutates heap memory
+ */
+class GCHammer implements Runnable 
+{
+  private int capacity;
+  private GCCache cache;
+  private volatile boolean stop = false;
+  private long cpu_nanos = -1L;
+  private long alloc_bytes = -1L;
+  private long ops = 0L;
+  private long payload_bytes = 0L;
+  private volatile Throwable failure;
+
+  // either the random keys and sizes or the trace drive the operations
+  private SplittableRandom rand;
+  private SizeDistribution sizes;
+  private GCTrace trace;
+  private int trace_start;
+
+  public GCHammer(GCCache cache, int capacity, SizeDistribution sizes, 
+                  SplittableRandom rand) 
+  {
+    this.cache = cache;
+    this.capacity = capacity;
+    this.sizes = sizes;
+    this.rand = rand;
+  }
+
+  public GCHammer(GCCache cache, GCTrace trace, int trace_start) 
+  {
+    this.cache = cache;
+    this.capacity = trace.getCapacity();
+    this.trace = trace;
+    this.trace_start = trace_start;
+  }
+
+  /**
+   * the random streams of the hammers of a seeded run; a trace written
+   * with the same seed records the operations of the first one
+   */
+  static SplittableRandom[] randoms(long seed, int count)
+  {
+    SplittableRandom root = new SplittableRandom(seed);
+    SplittableRandom rands[] = new SplittableRandom[count];
+    for (int h = 0; h < count; h++)
+    {
+      rands[h] = root.split();
+    }
+    return rands;
+  }
+
+  public void stop()
+  {
+    stop = true;
+  }
+
+  /**
+   * the cpu time used by the hammer thread, valid after it has finished
+   */
+  public long getCpuTime()
+  {
+    return cpu_nanos;
+  }
+
+  /**
+   * the bytes allocated by the hammer thread, -1 if not supported
+   */
+  public long getAllocatedBytes()
+  {
+    return alloc_bytes;
+  }
+
+  public long getOps()
+  {
+    return ops;
+  }
+
+  public long getPayloadBytes()
+  {
+    return payload_bytes;
+  }
+
+  /**
+   * what ended the hammer thread early, for example an OutOfMemoryError,
+   * null if it ran until stopped
+   */
+  public Throwable getFailure()
+  {
+    return failure;
+  }
+
+  public void run()
+  {
+    long start_alloc = GCStress.currentThreadAllocatedBytes();
+    try
+    {
+      if (trace != null)
+      {
+        runTrace();
+      }
+      else
+      {
+        runRandom();
+      }
+    }
+    catch (Throwable t)
+    {
+      // drop the cache so the rest of the run has memory to report with
+      cache = null;
+      failure = t;
+    }
+    cpu_nanos = GCStress.currentThreadCpuNanos();
+    if (start_alloc >= 0)
+    {
+      alloc_bytes = GCStress.currentThreadAllocatedBytes() - start_alloc;
+    }
+  }
+
+  private void runRandom()
+  {
+    while (!stop)
+    {
+      int key = rand.nextInt(capacity);
+      int size = sizes.sample(rand);
+      hammer(key, size);
+    }
+  }
+
+  /**
+   * replay the trace operations, wrapping around at the end
+   */
+  private void runTrace()
+  {
+    IntBuffer ops = trace.getOps();
+    int limit = trace.getNumOps() * 2;
+    int index = trace_start * 2;
+    while (!stop)
+    {
+      int key = ops.get(index);
+      int size = ops.get(index + 1);
+      index += 2;
+      if (index == limit)
+      {
+        index = 0;
+      }
+      hammer(key, size);
+    }
+  }
+
+  private void hammer(int key, int size)
+  {
+    ops++;
+    byte[] val = (byte[])cache.get(key);
+    if (val == null)
+    {
+      // if the cache entry is empty, fill it
+      cache.put(key, new byte[size]);
+      payload_bytes += size;
+    }
+    else
+    {
+      // otherwise, remove it
+      val = (byte[])cache.remove(key);
+    }
+  }
+}
@@ -0,0 +1,424 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.text.SimpleDateFormat;
+
+/**
+ * The GCStress timer as a probe embedded in another application. A max
+ * priority thread sleeps and records how late it wakes up, like the
+ * GCStress timer, but into a DelayHistogram instead of sample arrays, so
+ * memory stays bounded however long the probe runs. A reporter thread
+ * takes the histogram every interval, writes it to an interval log and
+ * hands it to the listeners. The GCStress hammer is optional:
+ *
+ *   GCProbe probe = new GCProbe.Builder()
+ *     .intervalMillis(10000)
+ *     .logFile("gcprobe.csv")
+ *     .build();
+ *   probe.start();
+ */
+public class GCProbe
+{
+  /**
+   * Private static fields
+   */
+  private static long NANOS_PER_MILLI = 1000L * 1000L;
+  private static double MICROS_PER_SECOND = 1000.0d * 1000.0d;
+  private static double PERCENTILES[] = { 50.0d, 90.0d, 99.0d, 99.9d };
+  private static String COMMA = ",";
+  private static String QUOTE = "\"";
+  private static String NEWLINE = "\n";
+  private static String DATEFORMAT = "yyyy-MM-dd HH:mm:ss";
+
+  private long sleep_millis;
+  private long interval_millis;
+  private String log_file;
+  private int hammer_capacity;
+  private int hammer_maxsize;
+  private List<GCProbeListener> listeners;
+
+  private volatile boolean stop = false;
+  private Thread timer_thrd;
+  private Thread reporter_thrd;
+  private Thread hammer_thrd;
+  private GCHammer hammer;
+  private FileWriter log;
+
+  // the timer records into current; the reporter replaces it. A private
+  // lock, so application code locking the probe cannot stall the timer.
+  private final Object lock = new Object();
+  private DelayHistogram current = new DelayHistogram();
+  private DelayHistogram total = new DelayHistogram();
+  private long interval_start;
+  private long total_start;
+  private long total_end;
+
+  private GCProbe(Builder builder)
+  {
+    sleep_millis = builder.sleep_millis;
+    interval_millis = builder.interval_millis;
+    log_file = builder.log_file;
+    hammer_capacity = builder.hammer_capacity;
+    hammer_maxsize = builder.hammer_maxsize;
+    listeners = new ArrayList<GCProbeListener>(builder.listeners);
+  }
+
+  //************************************************************************
+  //*                      PUBLIC INSTANCE METHODS                         *
+  //************************************************************************
+
+  /**
+   * open the interval log and start the timer, reporter and, if asked
+   * for, hammer threads
+   */
+  public void start() throws IOException
+  {
+    synchronized (lock)
+    {
+      if (timer_thrd != null)
+      {
+        throw new IllegalStateException("GCProbe already started");
+      }
+      if (log_file != null)
+      {
+        log = new FileWriter(log_file);
+        writeLogHeader();
+      }
+      total_start = System.currentTimeMillis();
+      total_end = total_start;
+      interval_start = total_start;
+
+      if (hammer_capacity > 0)
+      {
+        SizeDistribution sizes = SizeDistribution.parse("uniform",
+                                                        hammer_maxsize);
+        hammer = new GCHammer(GCCache.create("private", hammer_capacity),
+                              hammer_capacity, sizes, new SplittableRandom());
+        hammer_thrd = new Thread(hammer, "GCProbe Hammer");
+        hammer_thrd.setDaemon(true);
+        hammer_thrd.start();
+      }
+
+      timer_thrd = new Thread(new Runnable() {
+        public void run()
+        {
+          runTimer();
+        }
+      }, "GCProbe Timer");
+      timer_thrd.setPriority(Thread.MAX_PRIORITY);
+      timer_thrd.setDaemon(true);
+      timer_thrd.start();
+
+      reporter_thrd = new Thread(new Runnable() {
+        public void run()
+        {
+          runReporter();
+        }
+      }, "GCProbe Reporter");
+      reporter_thrd.setDaemon(true);
+      reporter_thrd.start();
+    }
+  }
+
+  /**
+   * stop all probe threads, report the last partial interval and close
+   * the interval log. A listener may call this from its interval
+   * callback, which runs on the reporter thread.
+   */
+  public void stop()
+  {
+    synchronized (lock)
+    {
+      if (timer_thrd == null || stop)
+      {
+        return;
+      }
+      stop = true;
+    }
+    if (hammer != null)
+    {
+      hammer.stop();
+    }
+    try
+    {
+      timer_thrd.interrupt();
+      timer_thrd.join();
+      // a listener stopping the probe runs on the reporter thread, which
+      // cannot join itself; it ends when the listener returns
+      if (Thread.currentThread() != reporter_thrd)
+      {
+        reporter_thrd.interrupt();
+        reporter_thrd.join();
+      }
+      if (hammer_thrd != null)
+      {
+        hammer_thrd.join();
+      }
+    }
+    catch (InterruptedException ie)
+    {
+    }
+    report();
+    if (log != null)
+    {
+      try
+      {
+        log.close();
+      }
+      catch (IOException ioe)
+      {
+        System.err.println("GCProbe: cannot close "+log_file+": "+ioe);
+      }
+    }
+  }
+
+  /**
+   * the delays of all completed intervals since the probe was started
+   */
+  public GCProbeInterval getTotal()
+  {
+    synchronized (total)
+    {
+      DelayHistogram copy = new DelayHistogram();
+      copy.add(total);
+      return new GCProbeInterval(total_start, total_end, copy);
+    }
+  }
+
+  //************************************************************************
+  //*                      PRIVATE INSTANCE METHODS                        *
+  //************************************************************************
+
+  private void runTimer()
+  {
+    long sleep_time_ns = sleep_millis * NANOS_PER_MILLI;
+    while (!stop)
+    {
+      long start = System.nanoTime();
+      try
+      {
+        Thread.sleep(sleep_millis);
+      }
+      catch (InterruptedException ie)
+      {
+        // interrupted by stop, the sleep was cut short
+        return;
+      }
+      long delay = System.nanoTime() - start - sleep_time_ns;
+      synchronized (lock)
+      {
+        current.record(delay / 1000);
+      }
+    }
+  }
+
+  private void runReporter()
+  {
+    while (!stop)
+    {
+      try
+      {
+        Thread.sleep(interval_millis);
+      }
+      catch (InterruptedException ie)
+      {
+        return;
+      }
+      report();
+    }
+  }
+
+  /**
+   * take the histogram of the interval just ended, add it to the total,
+   * log it and call the listeners
+   */
+  private void report()
+  {
+    DelayHistogram dh;
+    DelayHistogram next = new DelayHistogram();
+    long start;
+    long end = System.currentTimeMillis();
+    synchronized (lock)
+    {
+      dh = current;
+      current = next;
+      start = interval_start;
+      interval_start = end;
+    }
+    synchronized (total)
+    {
+      total.add(dh);
+      total_end = end;
+    }
+    GCProbeInterval interval = new GCProbeInterval(start, end, dh);
+    if (log != null)
+    {
+      writeLogInterval(interval);
+    }
+    for (GCProbeListener listener : listeners)
+    {
+      try
+      {
+        listener.interval(interval);
+      }
+      catch (RuntimeException re)
+      {
+        System.err.println("GCProbe: listener failed: "+re);
+      }
+    }
+  }
+
+  private void writeLogHeader() throws IOException
+  {
+    SimpleDateFormat sdf = new SimpleDateFormat(DATEFORMAT);
+    log.append(QUOTE + "Test=" + QUOTE + COMMA +
+               QUOTE + "GC Probe" + QUOTE + NEWLINE);
+    log.append(QUOTE + "VM=" + QUOTE + COMMA +
+               QUOTE + System.getProperty("java.vm.name") + QUOTE + NEWLINE);
+    log.append(QUOTE + "Date=" + QUOTE + COMMA +
+               QUOTE + sdf.format(new Date()) + QUOTE + NEWLINE);
+    log.append(QUOTE + "Host=" + QUOTE + COMMA +
+               QUOTE + GCStress.hostName() + QUOTE + NEWLINE);
+    log.append(QUOTE + "Sleep=" + QUOTE + COMMA +
+               sleep_millis + NEWLINE);
+    log.append(QUOTE + "Hammer=" + QUOTE + COMMA +
+               ((hammer_capacity > 0) ? hammer_capacity + ":" +
+                                        hammer_maxsize
+                                      : "off") + NEWLINE);
+    log.append(QUOTE + "Start" + QUOTE + COMMA +
+               QUOTE + "Seconds" + QUOTE + COMMA +
+               QUOTE + "Samples" + QUOTE + COMMA +
+               QUOTE + "Min Delay" + QUOTE + COMMA);
+    for (double pct : PERCENTILES)
+    {
+      log.append(QUOTE + GCStress.percentileLabel(pct) + " Delay" +
+                 QUOTE + COMMA);
+    }
+    log.append(QUOTE + "Max Delay" + QUOTE + COMMA +
+               QUOTE + "Histogram" + QUOTE + NEWLINE);
+    log.flush();
+  }
+
+  private void writeLogInterval(GCProbeInterval interval)
+  {
+    try
+    {
+      log.append(interval.getStartMillis() + COMMA +
+                 String.format("%.3f", (interval.getEndMillis() -
+                                        interval.getStartMillis()) /
+                                       1000.0d) + COMMA +
+                 interval.getCount() + COMMA +
+                 seconds(interval.getMinMicros()) + COMMA);
+      for (double pct : PERCENTILES)
+      {
+        log.append(seconds(interval.getPercentileMicros(pct)) + COMMA);
+      }
+      log.append(seconds(interval.getMaxMicros()) + COMMA +
+                 QUOTE + interval.getEncodedHistogram() + QUOTE + NEWLINE);
+      log.flush();
+    }
+    catch (IOException ioe)
+    {
+      System.err.println("GCProbe: cannot write "+log_file+": "+ioe);
+    }
+  }
+
+  private static String seconds(long micros)
+  {
+    return String.format("%.6f", micros / MICROS_PER_SECOND);
+  }
+
+  //************************************************************************
+  //*                      PUBLIC CLASSES                                  *
+  //************************************************************************
+
+  /**
+   * Configures a GCProbe; every setting has a default
+   */
+  public static class Builder
+  {
+    private long sleep_millis = 10L;
+    private long interval_millis = 10000L;
+    private String log_file = null;
+    private int hammer_capacity = 0;
+    private int hammer_maxsize = 256;
+    private List<GCProbeListener> listeners =
+      new ArrayList<GCProbeListener>();
+
+    /**
+     * the timer sleep in milliseconds (10)
+     */
+    public Builder sleepMillis(long millis)
+    {
+      if (millis <= 0)
+      {
+        throw new IllegalArgumentException("Bad sleep: "+millis);
+      }
+      sleep_millis = millis;
+      return this;
+    }
+
+    /**
+     * the reporting interval in milliseconds (10000)
+     */
+    public Builder intervalMillis(long millis)
+    {
+      if (millis <= 0)
+      {
+        throw new IllegalArgumentException("Bad interval: "+millis);
+      }
+      interval_millis = millis;
+      return this;
+    }
+
+    /**
+     * the CSV file to write one line per interval to (none)
+     */
+    public Builder logFile(String file)
+    {
+      log_file = file;
+      return this;
+    }
+
+    /**
+     * also run a GCStress hammer with the given cache capacity and max
+     * entry size (off)
+     */
+    public Builder hammer(int capacity, int maxsize)
+    {
+      if (capacity < 0 || maxsize <= 0)
+      {
+        throw new IllegalArgumentException("Bad hammer: "+capacity+":"+
+                                           maxsize);
+      }
+      hammer_capacity = capacity;
+      hammer_maxsize = maxsize;
+      return this;
+    }
+
+    /**
+     * add a listener called with each interval
+     */
+    public Builder listener(GCProbeListener listener)
+    {
+      listeners.add(listener);
+      return this;
+    }
+
+    public GCProbe build()
+    {
+      return new GCProbe(this);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+/**
+ * The timer delays recorded by a GCProbe during one interval, in
+ * microseconds
+ */
+public class GCProbeInterval
+{
+  private long start_millis;
+  private long end_millis;
+  private DelayHistogram histogram;
+
+  GCProbeInterval(long start_millis, long end_millis, 
+                  DelayHistogram histogram)
+  {
+    this.start_millis = start_millis;
+    this.end_millis = end_millis;
+    this.histogram = histogram;
+  }
+
+  public long getStartMillis()
+  {
+    return start_millis;
+  }
+
+  public long getEndMillis()
+  {
+    return end_millis;
+  }
+
+  public long getCount()
+  {
+    return histogram.getCount();
+  }
+
+  public long getMinMicros()
+  {
+    return histogram.getMin();
+  }
+
+  public long getMaxMicros()
+  {
+    return histogram.getMax();
+  }
+
+  public double getMeanMicros()
+  {
+    return histogram.getMean();
+  }
+
+  /**
+   * a delay percentile, within 1/128 of the recorded value
+   */
+  public long getPercentileMicros(double pct)
+  {
+    return histogram.percentile(pct);
+  }
+
+  /**
+   * the histogram in the encoding of the "Histogram" entry of GCStress
+   * CSV files. The interval log holds one such histogram per line and is
+   * not a result file, so GCStressMerge and GCStressCompare cannot read
+   * it.
+   */
+  public String getEncodedHistogram()
+  {
+    return histogram.encode();
+  }
+}
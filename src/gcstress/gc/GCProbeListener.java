@@ -0,0 +1,14 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+/**
+ * Called by the GCProbe reporter thread at the end of every interval
+ */
+public interface GCProbeListener
+{
+  void interval(GCProbeInterval interval);
+}
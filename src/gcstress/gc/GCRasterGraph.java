@@ -0,0 +1,958 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws the GCDelayGraph chart of memory usage vs sleep delay directly
+ * into a BufferedImage, or as SVG, without JFreeChart. The data columns
+ * are aggregated and rasterized in parallel bands of pixel columns.
+ */
+public class GCRasterGraph
+{
+  /**
+   * Private static fields
+   */
+  private static String INPUT_CSV = "gcstress.csv";
+  private static String CHART_FILE = "gcstress.jpg";
+  private static int WIDTH = 600;
+  private static int HEIGHT = 400;
+  // pixel columns per band when the band count is not set
+  private static int BAND_WIDTH = 512;
+
+  //************************************************************************
+  //*                      PUBLIC STATIC METHODS                           *
+  //************************************************************************
+
+  public static void main(String[] args)
+  {
+    String opt_input = INPUT_CSV;
+    String opt_chart = CHART_FILE;
+    String opt_format = null;
+    int opt_width = WIDTH;
+    int opt_height = HEIGHT;
+    int opt_bands = 0;
+
+    // check command line args
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i].equals("-h") || args[i].equals("--help"))
+      {
+        usage();
+        System.exit(0);
+      }
+      if (args[i].startsWith("--input="))
+      {
+        opt_input = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--chart="))
+      {
+        opt_chart = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--format="))
+      {
+        opt_format = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--width="))
+      {
+        try
+        {
+          opt_width =
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad width: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--height="))
+      {
+        try
+        {
+          opt_height =
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad height: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--bands="))
+      {
+        try
+        {
+          opt_bands =
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad bands: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else
+      {
+        System.err.println("Unknown option: "+args[i]);
+        usage();
+        System.exit(-1);
+      }
+    }
+
+    System.out.println("Creating GC Stress Graph: input="+opt_input+" chart="+
+                       opt_chart+" width="+opt_width+" height="+opt_height);
+    chartFromCSV(opt_input, opt_chart, opt_width, opt_height,
+                 opt_format, opt_bands);
+  }
+
+  /**
+   * generate a chart of memory usage vs sleep delay from a CSV input file,
+   * in the format given by the output file extension
+   */
+  public static void chartFromCSV(String input_file,
+                                  String output_file,
+                                  int width,
+                                  int height)
+  {
+    chartFromCSV(input_file, output_file, width, height, null, 0);
+  }
+
+  /**
+   * generate a jpg, png or svg chart of memory usage vs sleep delay from
+   * a CSV input file; a null format uses the output file extension and
+   * zero bands picks a band count from the width
+   */
+  public static void chartFromCSV(String input_file,
+                                  String output_file,
+                                  int width,
+                                  int height,
+                                  String format,
+                                  int bands)
+  {
+    // avoid using X11 display
+    System.setProperty("java.awt.headless", "true");
+    if (format == null)
+    {
+      int dot = output_file.lastIndexOf('.');
+      format = (dot == -1) ? "jpg" : output_file.substring(dot + 1);
+    }
+    format = format.toLowerCase();
+    if (format.equals("jpeg"))
+    {
+      format = "jpg";
+    }
+    if (!format.equals("jpg") && !format.equals("png") &&
+        !format.equals("svg"))
+    {
+      System.err.println("Unknown chart format: "+format);
+      System.exit(-1);
+    }
+
+    CSVData csvd = CSVData.read(input_file);
+    RasterChart chart = new RasterChart(csvd, width, height);
+    if (bands <= 0)
+    {
+      bands = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                                   chart.plot_width / BAND_WIDTH));
+    }
+    try
+    {
+      chart.computeColumns(bands);
+      if (format.equals("svg"))
+      {
+        FileWriter outfw = new FileWriter(output_file);
+        outfw.append(chart.toSVG());
+        outfw.close();
+      }
+      else
+      {
+        BufferedImage image = chart.toImage(bands);
+        if (!ImageIO.write(image, format, new File(output_file)))
+        {
+          System.err.println("No image writer for "+format);
+          System.exit(-1);
+        }
+      }
+    }
+    catch (Exception e)
+    {
+      System.err.println(e);
+      System.exit(-1);
+    }
+  }
+
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
+  private static void usage()
+  {
+    System.out.println("Usage: GCRasterGraph <options>");
+    System.out.println("  where <options> can be: (default)");
+    System.out.println("  --help           print this message");
+    System.out.println("  --input=<file>   set input csv file (gcstress.csv)");
+    System.out.println("  --chart=<file>   set output chart file (gcstress.jpg)");
+    System.out.println("  --format=<fmt>   set chart format jpg, png or svg (file extension)");
+    System.out.println("  --width=<num>    set chart width (600)");
+    System.out.println("  --height=<num>   set chart height (400)");
+    System.out.println("  --bands=<num>    set parallel column bands (width/512)");
+  }
+}
+
+//************************************************************************
+//*                      PACKAGE CLASSES                                 *
+//************************************************************************
+
+/**
+ * The layout, scales and per-pixel-column data of one chart
+ */
+class RasterChart
+{
+  private static Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 18);
+  private static Font SUBTITLE_FONT = new Font("SansSerif", Font.BOLD, 16);
+  private static Font LABEL_FONT = new Font("SansSerif", Font.PLAIN, 12);
+  private static Font TICK_FONT = new Font("SansSerif", Font.PLAIN, 10);
+  private static int MEM_RGB = 0xff5555;
+  private static int DELAY_RGB = 0x5555ff;
+  private static int THROTTLE_RGB = 0x55ff55;
+  private static int PLOT_RGB = 0xc0c0c0;
+  private static int GRID_RGB = 0xffffff;
+  private static int AXIS_RGB = 0x808080;
+
+  // the log delay axis covers 1 microsecond to 1 second
+  private static int DELAY_DECADES = 6;
+
+  int width;
+  int height;
+  int plot_left;
+  int plot_top;
+  int plot_width;
+  int plot_height;
+
+  private CSVData csvd;
+  private String title;
+  private String subtitle;
+  private String summary;
+  private String memlabel;
+  private String delaylabel;
+
+  // sample data and scales
+  private int count;
+  private long times[];
+  private double mem_mbytes[];
+  private double delay_secs[];
+  private double throttle_secs[];
+  private long time_min;
+  private double time_span;
+  private double mem_lo;
+  private double mem_hi;
+  private double bar_half;
+
+  // per column pixel rows, -1 if nothing to draw
+  private int mem_top[];
+  private int mem_bottom[];
+  private int bar_top[];
+  private int throttle_top[];
+
+  // ticks and their labels
+  private List<double[]> mem_ticks = new ArrayList<double[]>();
+  private List<double[]> time_ticks = new ArrayList<double[]>();
+
+  RasterChart(CSVData csvd, int width, int height)
+  {
+    this.csvd = csvd;
+    this.width = width;
+    this.height = height;
+
+    count = csvd.getSize();
+    times = new long[count];
+    mem_mbytes = new double[count];
+    delay_secs = new double[count];
+    throttle_secs = csvd.hasThrottling() ? new double[count] : null;
+    double mem_min = Double.MAX_VALUE;
+    double mem_max = 0.0d;
+    for (int i = 0; i < count; i++)
+    {
+      CSVSample sample = csvd.getSample(i);
+      times[i] = sample.timestamp;
+      mem_mbytes[i] = (double)sample.mem_kilos / 1000.0d;
+      delay_secs[i] = (double)sample.delay_micros / 1000000.0d;
+      if (throttle_secs != null)
+      {
+        throttle_secs[i] = (double)sample.throttled_micros / 1000000.0d;
+      }
+      mem_min = Math.min(mem_min, mem_mbytes[i]);
+      mem_max = Math.max(mem_max, mem_mbytes[i]);
+    }
+    if (count == 0)
+    {
+      mem_min = 0.0d;
+      mem_max = 1.0d;
+    }
+    time_min = (count > 0) ? times[0] : 0L;
+    time_span = (count > 1) ? Math.max(1L, times[count - 1] - times[0]) : 1L;
+    bar_half = (count > 1) ? 0.4d * time_span / (count - 1) : 0.5d;
+
+    // leave the lower 40% of the memory axis for the delay bars
+    double range = Math.max(mem_max - mem_min, 1.0d);
+    mem_hi = mem_max + 0.05d * range;
+    mem_lo = mem_min - 0.40d / 0.55d * range;
+
+    title = csvd.getValue("Test") + ": " + csvd.getValue("VM");
+    subtitle = csvd.getValue("Date");
+    memlabel = csvd.getMemlabel();
+    delaylabel = csvd.getDelaylabel();
+    summary = "Samples: " + count +
+      "  MaxMemory: " + String.format("%.1f",
+        parseDouble(csvd.getValue("Max Memory")) / 1024) + " MB" +
+      "  MaxDelay: " + String.format("%.6f",
+        parseDouble(csvd.getValue("Max Delay"))) + " sec" +
+      "  MinDelay: " + String.format("%.6f",
+        parseDouble(csvd.getValue("Min Delay"))) + " sec";
+
+    layout();
+  }
+
+  /**
+   * place the plot area inside the titles, axes and legend
+   */
+  private void layout()
+  {
+    BufferedImage scratch = new BufferedImage(1, 1,
+                                              BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = scratch.createGraphics();
+    FontMetrics title_fm = g2.getFontMetrics(TITLE_FONT);
+    FontMetrics sub_fm = g2.getFontMetrics(SUBTITLE_FONT);
+    FontMetrics label_fm = g2.getFontMetrics(LABEL_FONT);
+    FontMetrics tick_fm = g2.getFontMetrics(TICK_FONT);
+    g2.dispose();
+
+    plot_top = 4 + title_fm.getHeight() + sub_fm.getHeight() + 8;
+    int bottom = 4 + 2 * label_fm.getHeight() + 8 +
+                 tick_fm.getHeight() + label_fm.getHeight() + 4;
+    int left = 4 + label_fm.getHeight() + tick_fm.stringWidth("0000.0") + 6;
+    int right = 4 + label_fm.getHeight() + tick_fm.stringWidth("0.000001") + 6;
+    plot_left = left;
+    plot_width = Math.max(1, width - left - right);
+    plot_height = Math.max(1, height - plot_top - bottom);
+
+    // memory ticks at a 1, 2 or 5 step
+    double step = niceStep((mem_hi - mem_lo) / 8.0d);
+    double first = Math.max(0.0d, Math.ceil(mem_lo / step) * step);
+    for (double v = first; v <= mem_hi; v += step)
+    {
+      mem_ticks.add(new double[] { v, memRow(v) });
+    }
+    double secs = time_span / 1000.0d;
+    step = niceStep(secs / Math.max(2.0d, plot_width / 60.0d));
+    for (double v = 0.0d; v <= secs + step / 1000.0d; v += step)
+    {
+      time_ticks.add(new double[] { v, plot_left + v * 1000.0d /
+                                       time_span * plot_width });
+    }
+  }
+
+  /**
+   * compute the memory line span and delay bar height of each pixel
+   * column, in parallel bands of columns
+   */
+  void computeColumns(int bands) throws Exception
+  {
+    mem_top = new int[plot_width];
+    mem_bottom = new int[plot_width];
+    bar_top = new int[plot_width];
+    throttle_top = new int[plot_width];
+    runBands(bands, new BandTask() {
+      public void run(int from, int to)
+      {
+        for (int c = from; c < to; c++)
+        {
+          computeColumn(c);
+        }
+      }
+    });
+  }
+
+  /**
+   * render the chart into an image, rasterizing the data columns in
+   * parallel bands
+   */
+  BufferedImage toImage(int bands) throws Exception
+  {
+    final BufferedImage image =
+      new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = image.createGraphics();
+    g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                        RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    ImageCanvas canvas = new ImageCanvas(g2);
+    drawBackground(canvas);
+
+    // the data is written straight into the pixels, one band per thread
+    final int pixels[] =
+      ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+    runBands(bands, new BandTask() {
+      public void run(int from, int to)
+      {
+        for (int c = from; c < to; c++)
+        {
+          rasterColumn(pixels, c);
+        }
+      }
+    });
+
+    drawDecorations(canvas);
+    g2.dispose();
+    return image;
+  }
+
+  /**
+   * render the chart as an SVG document
+   */
+  String toSVG()
+  {
+    SVGCanvas canvas = new SVGCanvas(width, height);
+    drawBackground(canvas);
+
+    svgBars(canvas, bar_top, DELAY_RGB);
+    svgBars(canvas, throttle_top, THROTTLE_RGB);
+
+    // memory line through the top and bottom of each column span
+    StringBuilder points = new StringBuilder();
+    for (int c = 0; c < plot_width; c++)
+    {
+      if (mem_top[c] < 0)
+      {
+        continue;
+      }
+      points.append(plot_left + c).append(',').append(mem_top[c]).append(' ');
+      if (mem_bottom[c] != mem_top[c])
+      {
+        points.append(plot_left + c).append(',').append(mem_bottom[c])
+              .append(' ');
+      }
+    }
+    canvas.polyline(points.toString().trim(), MEM_RGB);
+
+    drawDecorations(canvas);
+    return canvas.toString();
+  }
+
+  //************************************************************************
+  //*                      PRIVATE METHODS                                 *
+  //************************************************************************
+
+  /**
+   * draw bars, merging neighbor columns of the same height
+   */
+  private void svgBars(SVGCanvas canvas, int tops[], int rgb)
+  {
+    int c = 0;
+    while (c < plot_width)
+    {
+      if (tops[c] < 0)
+      {
+        c++;
+        continue;
+      }
+      int start = c;
+      while (c < plot_width && tops[c] == tops[start])
+      {
+        c++;
+      }
+      canvas.fillRect(plot_left + start, tops[start], c - start,
+                      plot_top + plot_height - tops[start], rgb);
+    }
+  }
+
+  private void computeColumn(int c)
+  {
+    mem_top[c] = -1;
+    mem_bottom[c] = -1;
+    bar_top[c] = -1;
+    throttle_top[c] = -1;
+    if (count == 0)
+    {
+      return;
+    }
+    double t0 = time_min + c * time_span / plot_width;
+    double t1 = time_min + (c + 1) * time_span / plot_width;
+
+    // memory line: interpolated ends of the column plus samples inside
+    double lo = memAt(t0);
+    double hi = lo;
+    double end = memAt(t1);
+    lo = Math.min(lo, end);
+    hi = Math.max(hi, end);
+    for (int i = lastAtOrBefore(t0) + 1; i < count && times[i] < t1; i++)
+    {
+      lo = Math.min(lo, mem_mbytes[i]);
+      hi = Math.max(hi, mem_mbytes[i]);
+    }
+    mem_top[c] = memRow(hi);
+    mem_bottom[c] = Math.max(memRow(lo), mem_top[c] + 1);
+
+    // delay bars: the tallest bar covering the column
+    double delay = 0.0d;
+    double throttled = 0.0d;
+    for (int i = lastAtOrBefore(t0 - bar_half) + 1;
+         i < count && times[i] < t1 + bar_half; i++)
+    {
+      delay = Math.max(delay, delay_secs[i]);
+      if (throttle_secs != null)
+      {
+        throttled = Math.max(throttled, throttle_secs[i]);
+      }
+    }
+    if (delay > 0.0d)
+    {
+      bar_top[c] = delayRow(delay);
+    }
+    if (throttled > 0.0d)
+    {
+      throttle_top[c] = delayRow(throttled);
+    }
+  }
+
+  private void rasterColumn(int pixels[], int c)
+  {
+    int x = plot_left + c;
+    int bottom = plot_top + plot_height;
+    if (bar_top[c] >= 0)
+    {
+      for (int y = bar_top[c]; y < bottom; y++)
+      {
+        pixels[y * width + x] = DELAY_RGB;
+      }
+    }
+    if (throttle_top[c] >= 0)
+    {
+      for (int y = throttle_top[c]; y < bottom; y++)
+      {
+        pixels[y * width + x] = THROTTLE_RGB;
+      }
+    }
+    if (mem_top[c] >= 0)
+    {
+      int from = Math.max(plot_top, mem_top[c]);
+      int to = Math.min(bottom, mem_bottom[c] + 1);
+      for (int y = from; y < to; y++)
+      {
+        pixels[y * width + x] = MEM_RGB;
+      }
+    }
+  }
+
+  private void drawBackground(ChartCanvas canvas)
+  {
+    canvas.fillRect(0, 0, width, height, 0xffffff);
+    canvas.fillRect(plot_left, plot_top, plot_width, plot_height,
+                    PLOT_RGB);
+    for (double tick[] : mem_ticks)
+    {
+      canvas.line(plot_left, (int)tick[1], plot_left + plot_width,
+                  (int)tick[1], GRID_RGB);
+    }
+    for (double tick[] : time_ticks)
+    {
+      canvas.line((int)tick[1], plot_top, (int)tick[1],
+                  plot_top + plot_height, GRID_RGB);
+    }
+  }
+
+  private void drawDecorations(ChartCanvas canvas)
+  {
+    int right = plot_left + plot_width;
+    int bottom = plot_top + plot_height;
+    Font tfont = TICK_FONT;
+    Font lfont = LABEL_FONT;
+
+    // titles
+    int y = 4 + canvas.ascent(TITLE_FONT);
+    canvas.text(width / 2, y, title, TITLE_FONT, 0, 0);
+    y += canvas.height(TITLE_FONT) -
+         canvas.ascent(TITLE_FONT) +
+         canvas.ascent(SUBTITLE_FONT);
+    canvas.text(width / 2, y, subtitle, SUBTITLE_FONT, 0, 0);
+
+    // axes
+    canvas.line(plot_left, plot_top, plot_left, bottom, AXIS_RGB);
+    canvas.line(right, plot_top, right, bottom, AXIS_RGB);
+    canvas.line(plot_left, bottom, right, bottom, AXIS_RGB);
+    int tick_ascent = canvas.ascent(tfont);
+    for (double tick[] : mem_ticks)
+    {
+      canvas.line(plot_left - 3, (int)tick[1], plot_left, (int)tick[1],
+                  AXIS_RGB);
+      canvas.text(plot_left - 5, (int)tick[1] + tick_ascent / 2,
+                  String.format("%.1f", tick[0]), tfont, 1, 0);
+    }
+    for (int d = 0; d <= DELAY_DECADES; d++)
+    {
+      double secs = Math.pow(10.0d, -d);
+      int row = delayRow(secs);
+      canvas.line(right, row, right + 3, row, AXIS_RGB);
+      canvas.text(right + 5, row + tick_ascent / 2,
+                  String.format("%." + d + "f", secs), tfont, -1, 0);
+    }
+    for (double tick[] : time_ticks)
+    {
+      canvas.line((int)tick[1], bottom, (int)tick[1], bottom + 3, AXIS_RGB);
+      canvas.text((int)tick[1], bottom + 4 + tick_ascent,
+                  String.format(tick[0] < 10.0d ? "%.1f" : "%.0f", tick[0]),
+                  tfont, 0, 0);
+    }
+
+    // axis labels
+    int label_ascent = canvas.ascent(lfont);
+    y = bottom + 4 + canvas.height(tfont) + label_ascent;
+    canvas.text(plot_left + plot_width / 2, y, "Seconds", lfont, 0, 0);
+    canvas.text(4 + label_ascent, plot_top + plot_height / 2, "MBytes",
+                lfont, 0, -90);
+    canvas.text(width - 4 - label_ascent, plot_top + plot_height / 2,
+                "Seconds", lfont, 0, 90);
+
+    // legend and summary
+    y += canvas.height(lfont) + 4;
+    int swatch = label_ascent;
+    int mem_w = canvas.width(memlabel, lfont);
+    int delay_w = canvas.width(delaylabel, lfont);
+    int throttle_w = (throttle_secs != null) 
+      ? swatch + 4 + canvas.width("Throttled", lfont) + 16 : 0;
+    int x = (width - (2 * (swatch + 4) + mem_w + 16 + delay_w + 
+                      throttle_w)) / 2;
+    canvas.fillRect(x, y - swatch, swatch, swatch, MEM_RGB);
+    canvas.text(x + swatch + 4, y, memlabel, lfont, -1, 0);
+    x += swatch + 4 + mem_w + 16;
+    canvas.fillRect(x, y - swatch, swatch, swatch, DELAY_RGB);
+    canvas.text(x + swatch + 4, y, delaylabel, lfont, -1, 0);
+    if (throttle_secs != null)
+    {
+      x += swatch + 4 + delay_w + 16;
+      canvas.fillRect(x, y - swatch, swatch, swatch, THROTTLE_RGB);
+      canvas.text(x + swatch + 4, y, "Throttled", lfont, -1, 0);
+    }
+    canvas.text(width / 2, height - 4 - (canvas.height(lfont) - label_ascent),
+                summary, lfont, 0, 0);
+  }
+
+  /**
+   * run a task over the plot columns split into bands, one thread per band
+   */
+  private void runBands(int bands, final BandTask task) throws Exception
+  {
+    bands = Math.max(1, Math.min(bands, plot_width));
+    if (bands == 1)
+    {
+      task.run(0, plot_width);
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(bands);
+    try
+    {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      int band_width = (plot_width + bands - 1) / bands;
+      for (int b = 0; b < bands; b++)
+      {
+        final int from = b * band_width;
+        final int to = Math.min(plot_width, from + band_width);
+        futures.add(pool.submit(new Runnable() {
+          public void run()
+          {
+            task.run(from, to);
+          }
+        }));
+      }
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    finally
+    {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * index of the last sample at or before a time, -1 if none
+   */
+  private int lastAtOrBefore(double t)
+  {
+    int lo = 0;
+    int hi = count - 1;
+    int found = -1;
+    while (lo <= hi)
+    {
+      int mid = (lo + hi) >>> 1;
+      if (times[mid] <= t)
+      {
+        found = mid;
+        lo = mid + 1;
+      }
+      else
+      {
+        hi = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * memory usage interpolated between samples
+   */
+  private double memAt(double t)
+  {
+    int i = lastAtOrBefore(t);
+    if (i < 0)
+    {
+      return mem_mbytes[0];
+    }
+    if (i >= count - 1 || times[i + 1] == times[i])
+    {
+      return mem_mbytes[i];
+    }
+    double f = (t - times[i]) / (double)(times[i + 1] - times[i]);
+    return mem_mbytes[i] + f * (mem_mbytes[i + 1] - mem_mbytes[i]);
+  }
+
+  private int memRow(double mbytes)
+  {
+    double f = (mem_hi - mbytes) / (mem_hi - mem_lo);
+    return plot_top + (int)Math.round(f * (plot_height - 1));
+  }
+
+  private int delayRow(double secs)
+  {
+    double decades = -Math.log10(Math.max(secs, 1.0e-9d));
+    decades = Math.max(0.0d, Math.min((double)DELAY_DECADES, decades));
+    return plot_top +
+      (int)Math.round(decades / DELAY_DECADES *
+                      (plot_height - 1));
+  }
+
+  private static double niceStep(double raw)
+  {
+    if (raw <= 0.0d)
+    {
+      return 1.0d;
+    }
+    double decade = Math.pow(10.0d, Math.floor(Math.log10(raw)));
+    double f = raw / decade;
+    return decade * ((f <= 1.0d) ? 1.0d : (f <= 2.0d) ? 2.0d
+                                        : (f <= 5.0d) ? 5.0d : 10.0d);
+  }
+
+  private static double parseDouble(String value)
+  {
+    try
+    {
+      return Double.parseDouble(value);
+    }
+    catch (NumberFormatException nfe)
+    {
+      return 0.0d;
+    }
+  }
+}
+
+/**
+ * A range of pixel columns rendered by one thread
+ */
+interface BandTask
+{
+  void run(int from, int to);
+}
+
+/**
+ * The drawing operations shared by the image and SVG output. Text is
+ * aligned by halign -1 (left), 0 (center) or 1 (right) and rotated by
+ * the given degrees around its anchor.
+ */
+interface ChartCanvas
+{
+  void fillRect(int x, int y, int w, int h, int rgb);
+
+  void line(int x1, int y1, int x2, int y2, int rgb);
+
+  void text(int x, int y, String str, Font font, int halign, int degrees);
+
+  int width(String str, Font font);
+
+  int ascent(Font font);
+
+  int height(Font font);
+}
+
+/**
+ * Draws on an image with Java2D
+ */
+class ImageCanvas implements ChartCanvas
+{
+  private Graphics2D g2;
+
+  ImageCanvas(Graphics2D g2)
+  {
+    this.g2 = g2;
+    g2.setStroke(new BasicStroke(1.0f));
+  }
+
+  public void fillRect(int x, int y, int w, int h, int rgb)
+  {
+    g2.setColor(new Color(rgb));
+    g2.fillRect(x, y, w, h);
+  }
+
+  public void line(int x1, int y1, int x2, int y2, int rgb)
+  {
+    g2.setColor(new Color(rgb));
+    g2.drawLine(x1, y1, x2, y2);
+  }
+
+  public void text(int x, int y, String str, Font font, int halign,
+                   int degrees)
+  {
+    g2.setColor(Color.black);
+    g2.setFont(font);
+    int w = g2.getFontMetrics(font).stringWidth(str);
+    int dx = (halign < 0) ? 0 : (halign == 0) ? -w / 2 : -w;
+    AffineTransform saved = g2.getTransform();
+    g2.translate(x, y);
+    g2.rotate(Math.toRadians(degrees));
+    g2.drawString(str, dx, 0);
+    g2.setTransform(saved);
+  }
+
+  public int width(String str, Font font)
+  {
+    return g2.getFontMetrics(font).stringWidth(str);
+  }
+
+  public int ascent(Font font)
+  {
+    return g2.getFontMetrics(font).getAscent();
+  }
+
+  public int height(Font font)
+  {
+    return g2.getFontMetrics(font).getHeight();
+  }
+}
+
+/**
+ * Writes SVG elements, measuring text with the Java2D font metrics
+ */
+class SVGCanvas implements ChartCanvas
+{
+  private StringBuilder svg = new StringBuilder();
+  private Graphics2D metrics;
+
+  SVGCanvas(int width, int height)
+  {
+    metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+      .createGraphics();
+    svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"")
+       .append(width).append("\" height=\"").append(height)
+       .append("\" viewBox=\"0 0 ").append(width).append(' ')
+       .append(height).append("\">\n");
+  }
+
+  public void fillRect(int x, int y, int w, int h, int rgb)
+  {
+    svg.append("<rect x=\"").append(x).append("\" y=\"").append(y)
+       .append("\" width=\"").append(w).append("\" height=\"").append(h)
+       .append("\" fill=\"").append(color(rgb)).append("\"/>\n");
+  }
+
+  public void line(int x1, int y1, int x2, int y2, int rgb)
+  {
+    svg.append("<line x1=\"").append(x1 + 0.5d).append("\" y1=\"")
+       .append(y1 + 0.5d).append("\" x2=\"").append(x2 + 0.5d)
+       .append("\" y2=\"").append(y2 + 0.5d).append("\" stroke=\"")
+       .append(color(rgb)).append("\"/>\n");
+  }
+
+  void polyline(String points, int rgb)
+  {
+    svg.append("<polyline fill=\"none\" stroke-width=\"1.5\" stroke=\"")
+       .append(color(rgb)).append("\" points=\"").append(points)
+       .append("\"/>\n");
+  }
+
+  public void text(int x, int y, String str, Font font, int halign,
+                   int degrees)
+  {
+    String anchor = (halign < 0) ? "start" : (halign == 0) ? "middle"
+                                                           : "end";
+    svg.append("<text x=\"").append(x).append("\" y=\"").append(y)
+       .append("\" font-family=\"sans-serif\" font-size=\"")
+       .append(font.getSize()).append('"');
+    if (font.isBold())
+    {
+      svg.append(" font-weight=\"bold\"");
+    }
+    svg.append(" text-anchor=\"").append(anchor).append('"');
+    if (degrees != 0)
+    {
+      svg.append(" transform=\"rotate(").append(degrees).append(' ')
+         .append(x).append(' ').append(y).append(")\"");
+    }
+    svg.append('>').append(escape(str)).append("</text>\n");
+  }
+
+  public int width(String str, Font font)
+  {
+    return metrics.getFontMetrics(font).stringWidth(str);
+  }
+
+  public int ascent(Font font)
+  {
+    return metrics.getFontMetrics(font).getAscent();
+  }
+
+  public int height(Font font)
+  {
+    return metrics.getFontMetrics(font).getHeight();
+  }
+
+  public String toString()
+  {
+    return svg.toString() + "</svg>\n";
+  }
+
+  private static String color(int rgb)
+  {
+    return String.format("#%06x", rgb & 0xffffff);
+  }
+
+  private static String escape(String str)
+  {
+    return str.replace("&", "&amp;").replace("<", "&lt;")
+              .replace(">", "&gt;").replace("\"", "&quot;");
+  }
+}
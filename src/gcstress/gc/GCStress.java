@@ -7,12 +7,18 @@
 package gcstress.gc;
 
 import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 
 public class GCStress implements Runnable
@@ -34,11 +40,22 @@ public class GCStress implements Runnable
   private static String QUOTE = "\"";
   private static String NEWLINE = "\n";
   private static String DATEFORMAT = "yyyy-MM-dd HH:mm:ss";
+  private static double NANOS_PER_SECOND = 1000.0d * 1000.0d * 1000.0d;
+  private static List<GarbageCollectorMXBean> gc_beans = 
+    ManagementFactory.getGarbageCollectorMXBeans();
 
   // default cache capacity
   private static final int CACHE_CAP = 2000000;
   // default max cache entry size
   private static int CACHE_MAX_ENTRY_SIZE = 256;
+  // default number of operations in a trace file
+  private static int TRACE_OPS = 10000000;
+
+  // default milliseconds between cgroup samples
+  private static int CGROUP_SLEEP_TIME = 10;
+
+  // delay percentiles reported in addition to the max delay
+  static double PERCENTILES[] = { 50.0d, 90.0d, 99.0d, 99.9d };
 
   /**
    * Private instance fields
@@ -46,8 +63,43 @@ public class GCStress implements Runnable
   private long timestamp[];
   private long mem_kilos[];
   private long delay_micros[];
+  private long gc_millis[];
   private int sample_index = 0;
 
+  // collection time when the samples started
+  private long gc_base;
+
+  // sorted copy of the delays, built on demand for percentiles
+  private long sorted_micros[];
+
+  // the control run to compare against, if any
+  private GCStress control;
+
+  // the workload seed and trace file, if any
+  private String seed;
+  private String trace_file;
+
+  // the payload size distribution, if not replaying a trace
+  private SizeDistribution sizes;
+  // the size distribution spec, also of a replayed trace if it has one
+  private String size_spec;
+
+  // the cache hammered, the number of hammer threads and their work
+  private String cache_name = "private";
+  private int num_hammers = 1;
+  private long hammer_ops = 0L;
+  private long payload_bytes = 0L;
+  private long alloc_bytes = -1L;
+
+  // cgroup throttling, run queue wait and load of each sample, if sampled
+  private CgroupSampler cgroup;
+  private CgroupSnapshot cgroup_last;
+  private long throttling_last[];
+  private long throttled_periods[];
+  private long throttled_micros[];
+  private long runq_micros[];
+  private double load_avg[];
+
   // cache capacity
   private int capacity;
 
@@ -71,6 +123,16 @@ public class GCStress implements Runnable
   private double dmem_max;
   private double dmem_min;
 
+  // cpu and gc accounting in nanoseconds, -1 if not supported
+  private long elapsed_nanos = -1L;
+  private long gc_nanos = -1L;
+  private long gc_concurrent_nanos = -1L;
+  private long process_cpu_nanos = -1L;
+  private long hammer_cpu_nanos = -1L;
+  // why a hammer thread ended early, null if none did
+  private String hammer_failure;
+  private long timer_cpu_nanos = -1L;
+
   //************************************************************************
   //*                      PUBLIC CONSTRUCTORS                             *
   //************************************************************************
@@ -85,7 +147,11 @@ public class GCStress implements Runnable
     timestamp = new long[num_samples];
     mem_kilos = new long[num_samples];
     delay_micros = new long[num_samples];
-
+    gc_millis = new long[num_samples];
+    throttled_periods = new long[num_samples];
+    throttled_micros = new long[num_samples];
+    runq_micros = new long[num_samples];
+    load_avg = new double[num_samples];
   }
 
   //************************************************************************
@@ -100,6 +166,16 @@ public class GCStress implements Runnable
     int opt_sleepTime = SLEEP_TIME;
     int opt_samples = NUM_SAMPLES;
     String opt_output = OUTPUT_CSV;
+    int opt_control = 0;
+    boolean opt_burn = false;
+    Long opt_seed = null;
+    String opt_trace = null;
+    String opt_trace_write = null;
+    int opt_trace_ops = TRACE_OPS;
+    String opt_size_dist = "uniform";
+    String opt_cache = "private";
+    int opt_threads = 1;
+    int opt_cgroup = 0;
 
     // check command line args
     for (int i = 0; i < args.length; i++)
@@ -179,6 +255,135 @@ public class GCStress implements Runnable
           System.exit(-1);
         }
       }
+      else if (args[i].startsWith("--cache="))
+      {
+        opt_cache = args[i].substring(args[i].indexOf('=') + 1);
+        // each cache writes its own output file, so no name twice
+        List<String> names = new ArrayList<String>();
+        for (String name : opt_cache.split(","))
+        {
+          if (!GCCache.isValid(name) || names.contains(name))
+          {
+            System.err.println("Bad cache: "+args[i]);
+            usage();
+            System.exit(-1);
+          }
+          names.add(name);
+        }
+      }
+      else if (args[i].startsWith("--threads="))
+      {
+        try
+        {
+          opt_threads = 
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad threads: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+        if (opt_threads < 1)
+        {
+          System.err.println("Bad threads: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--size-dist="))
+      {
+        opt_size_dist = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--seed="))
+      {
+        try
+        {
+          opt_seed = 
+            Long.valueOf(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad seed: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--trace="))
+      {
+        opt_trace = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--trace-write="))
+      {
+        opt_trace_write = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--trace-ops="))
+      {
+        try
+        {
+          opt_trace_ops = 
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad trace ops: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].equals("--control"))
+      {
+        // same number of samples as the stressed run
+        opt_control = -1;
+      }
+      else if (args[i].startsWith("--control="))
+      {
+        try
+        {
+          opt_control = 
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad control samples: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+        if (opt_control <= 0)
+        {
+          System.err.println("Bad control samples: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].equals("--control-burn"))
+      {
+        opt_burn = true;
+      }
+      else if (args[i].equals("--cgroup"))
+      {
+        opt_cgroup = CGROUP_SLEEP_TIME;
+      }
+      else if (args[i].startsWith("--cgroup="))
+      {
+        try
+        {
+          opt_cgroup = 
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad cgroup sleep: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+        if (opt_cgroup <= 0)
+        {
+          System.err.println("Bad cgroup sleep: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
       else
       {
         System.err.println("Unknown option: "+args[i]);
@@ -187,26 +392,276 @@ public class GCStress implements Runnable
       }
     }
     
-    System.out.println("Starting GC Stress: samples="+opt_samples+" sleep="+
-                       opt_sleepTime+" ms");
+    // seed all hammer random number generators from one root
+    long seed = (opt_seed != null) ? opt_seed.longValue() 
+                                   : new SplittableRandom().nextLong();
+
+    // build the size tables once, before any sampling
+    SizeDistribution sizes = null;
+    try
+    {
+      sizes = SizeDistribution.parse(opt_size_dist, opt_maxsize);
+    }
+    catch (Exception e)
+    {
+      System.err.println("Bad size distribution: "+opt_size_dist+": "+e);
+      usage();
+      System.exit(-1);
+    }
+
+    if (opt_trace_write != null)
+    {
+      System.out.println("Writing trace "+opt_trace_write+": ops="+
+                         opt_trace_ops+" seed="+seed);
+      try
+      {
+        GCTrace.write(opt_trace_write, opt_capacity, opt_maxsize, sizes,
+                      opt_trace_ops, seed);
+      }
+      catch (Exception e)
+      {
+        System.err.println("Cannot write trace: "+e);
+        System.exit(-1);
+      }
+      System.exit(0);
+    }
 
-    // start thread to hammer heap memory at normal priority
-    GCHammer hammer = new GCHammer(opt_capacity, opt_maxsize);
-    Thread hammerThrd = new Thread(hammer, "GCStress Hammer");
-    hammerThrd.setDaemon(true);
-    hammerThrd.start();
+    GCTrace trace = null;
+    if (opt_trace != null)
+    {
+      try
+      {
+        trace = GCTrace.open(opt_trace);
+      }
+      catch (Exception e)
+      {
+        System.err.println("Cannot read trace: "+e);
+        System.exit(-1);
+      }
+      System.out.println("Replaying trace "+opt_trace+": ops="+
+                         trace.getNumOps()+" capacity="+trace.getCapacity()+
+                         " maxsize="+trace.getMaxsize()+
+                         " seed="+trace.getSeed()+
+                         " size-dist="+trace.getSizeSpec());
+    }
 
     // boost ourselves to max priority
-    int priority = Thread.MAX_PRIORITY;
-    Thread.currentThread().setPriority(priority);
+    Thread.currentThread().setPriority(Thread.MAX_PRIORITY);
+
+    // run the timer without heap stress to get the baseline jitter
+    GCStress control = null;
+    if (opt_control != 0)
+    {
+      int control_samples = (opt_control < 0) ? opt_samples : opt_control;
+      System.out.println("Starting control run: samples="+control_samples+
+                         " sleep="+opt_sleepTime+" ms"+
+                         (opt_burn ? " (cpu burner)" : ""));
+
+      // optionally keep a core busy without allocating
+      CPUBurner burner = null;
+      Thread burnerThrd = null;
+      if (opt_burn)
+      {
+        burner = new CPUBurner();
+        burnerThrd = new Thread(burner, "GCStress Burner");
+        burnerThrd.setDaemon(true);
+        burnerThrd.start();
+      }
+
+      control = new GCStress(opt_sleepTime, control_samples, null);
+      runTimer(control);
+
+      if (burner != null)
+      {
+        burner.stop();
+        try
+        {
+          burnerThrd.join();
+        }
+        catch (InterruptedException ie)
+        {
+        }
+      }
+    }
+
+    // sample cgroup throttling at min priority during the stressed runs
+    CgroupSampler cgroup = null;
+    if (opt_cgroup > 0)
+    {
+      cgroup = new CgroupSampler(opt_cgroup);
+      System.out.println("Starting cgroup sampler: sleep="+opt_cgroup+
+                         " ms cpu.stat="+cgroup.getCpuStatFile());
+      cgroup.start();
+    }
+
+    // one stressed run per cache, each with the same workload
+    String cache_names[] = opt_cache.split(",");
+    int capacity = (trace != null) ? trace.getCapacity() : opt_capacity;
+    GCStress runs[] = new GCStress[cache_names.length];
+    for (int c = 0; c < cache_names.length; c++)
+    {
+      String cache_name = cache_names[c];
+      String output = (cache_names.length == 1) ? opt_output 
+                                                : cacheOutput(opt_output, 
+                                                              cache_name);
+      System.out.println("Starting GC Stress: samples="+opt_samples+" sleep="+
+                         opt_sleepTime+" ms cache="+cache_name+
+                         " threads="+opt_threads);
+
+      long start_nanos = System.nanoTime();
+      long start_gc_millis = gcCollectionMillis(false);
+      long start_concurrent_millis = gcCollectionMillis(true);
+      long start_cpu_nanos = processCpuNanos();
+
+      // start threads to hammer heap memory at normal priority
+      SplittableRandom rands[] = GCHammer.randoms(seed, opt_threads);
+      GCCache shared = cache_name.equals("private") ? null 
+                       : GCCache.create(cache_name, capacity);
+      GCHammer hammers[] = new GCHammer[opt_threads];
+      Thread hammerThrds[] = new Thread[opt_threads];
+      for (int h = 0; h < opt_threads; h++)
+      {
+        GCCache cache = (shared != null) ? shared 
+                        : GCCache.create(cache_name, capacity);
+        hammers[h] = (trace != null) 
+          ? new GCHammer(cache, trace, 
+                         (int)((long)h * trace.getNumOps() / opt_threads))
+          : new GCHammer(cache, capacity, sizes, rands[h]);
+        hammerThrds[h] = new Thread(hammers[h], (opt_threads == 1) 
+                                    ? "GCStress Hammer" 
+                                    : "GCStress Hammer " + h);
+        hammerThrds[h].setDaemon(true);
+        hammerThrds[h].start();
+      }
+
+      // start the timer also at max priority
+      GCStress gcstress = new GCStress(opt_sleepTime, 
+                                       opt_samples, 
+                                       output);
+      gcstress.control = control;
+      gcstress.cache_name = cache_name;
+      gcstress.num_hammers = opt_threads;
+      gcstress.cgroup = cgroup;
+      if (trace != null)
+      {
+        gcstress.trace_file = opt_trace;
+        gcstress.seed = Long.toString(trace.getSeed());
+      }
+      else if (opt_seed != null)
+      {
+        gcstress.seed = opt_seed.toString();
+      }
+      if (trace == null)
+      {
+        gcstress.sizes = sizes;
+        gcstress.size_spec = sizes.getSpec();
+      }
+      else
+      {
+        gcstress.size_spec = trace.getSizeSpec();
+      }
+      runTimer(gcstress);
+
+      // stop the hammers
+      for (int h = 0; h < opt_threads; h++)
+      {
+        hammers[h].stop();
+      }
+      gcstress.hammer_cpu_nanos = 0L;
+      gcstress.alloc_bytes = 0L;
+      for (int h = 0; h < opt_threads; h++)
+      {
+        try
+        {
+          // wait for the hammer to finish
+          hammerThrds[h].join();
+        }
+        catch (InterruptedException ie)
+        {
+        }
+        if (hammers[h].getFailure() != null)
+        {
+          gcstress.hammer_failure = hammers[h].getFailure().toString();
+          System.err.println(hammerThrds[h].getName()+" failed: "+
+                             gcstress.hammer_failure);
+        }
+        gcstress.hammer_ops += hammers[h].getOps();
+        gcstress.payload_bytes += hammers[h].getPayloadBytes();
+        if (hammers[h].getCpuTime() < 0 || gcstress.hammer_cpu_nanos < 0)
+        {
+          gcstress.hammer_cpu_nanos = -1L;
+        }
+        else
+        {
+          gcstress.hammer_cpu_nanos += hammers[h].getCpuTime();
+        }
+        if (hammers[h].getAllocatedBytes() < 0 || gcstress.alloc_bytes < 0)
+        {
+          gcstress.alloc_bytes = -1L;
+        }
+        else
+        {
+          gcstress.alloc_bytes += hammers[h].getAllocatedBytes();
+        }
+      }
+      hammers = null;
+      hammerThrds = null;
+      shared = null;
+
+      gcstress.elapsed_nanos = System.nanoTime() - start_nanos;
+      gcstress.gc_nanos = 
+        (gcCollectionMillis(false) - start_gc_millis) * NANOS_PER_MILLI;
+      gcstress.gc_concurrent_nanos = 
+        (gcCollectionMillis(true) - start_concurrent_millis) * 
+        NANOS_PER_MILLI;
+      if (start_cpu_nanos >= 0)
+      {
+        gcstress.process_cpu_nanos = processCpuNanos() - start_cpu_nanos;
+      }
+
+      gcstress.displayResults();
+      System.out.println("Generating "+output+"...");
+      gcstress.outputResults();
+      runs[c] = gcstress;
+
+      if (c + 1 < cache_names.length)
+      {
+        // do not leave this run's garbage to the next one
+        System.gc();
+      }
+    }
+
+    if (cgroup != null)
+    {
+      cgroup.stop();
+    }
+
+    if (runs.length > 1)
+    {
+      displayComparison(runs);
+    }
+  }
+
+  //************************************************************************
+  //*                      PUBLIC INSTANCE METHODS                         *
+  //************************************************************************
+
+  public void run()
+  {
+    performTest();
+  }
 
-    // start the timer also at max priority
-    GCStress gcstress = new GCStress(opt_sleepTime, 
-                                     opt_samples, 
-                                     opt_output);
+  //************************************************************************
+  //*                      PRIVATE INSTANCE METHODS                        *
+  //************************************************************************
 
+  /**
+   * run the timer at max priority and wait for it to finish
+   */
+  private static void runTimer(GCStress gcstress)
+  {
     Thread timerThrd = new Thread(gcstress, "GCStress Timer");
-    timerThrd.setPriority(priority);
+    timerThrd.setPriority(Thread.MAX_PRIORITY);
     timerThrd.setDaemon(true);
     timerThrd.start();
 
@@ -218,40 +673,153 @@ public class GCStress implements Runnable
     catch (InterruptedException ie)
     {
     }
+  }
 
-    // stop the hammer
-    hammer.stop();
-    try
+  /**
+   * get the total collection time in milliseconds of the pause beans, or
+   * of the concurrent cycle beans. ZGC and Shenandoah have both, and the
+   * cycle time includes the pauses and the concurrent work, so counting
+   * it as collection time would double count pauses.
+   */
+  private static long gcCollectionMillis(boolean concurrent)
+  {
+    long total = 0L;
+    for (GarbageCollectorMXBean gcb : gc_beans)
     {
-      // wait for the hammer to finish
-      hammerThrd.join();
+      if (isConcurrentBean(gcb.getName()) != concurrent)
+      {
+        continue;
+      }
+      long time = gcb.getCollectionTime();
+      if (time > 0)
+      {
+        total += time;
+      }
     }
-    catch (InterruptedException ie)
+    return total;
+  }
+
+  /**
+   * ZGC and Shenandoah report concurrent cycles in "... Cycles" beans and
+   * G1 reports its concurrent marking in "G1 Concurrent GC"
+   */
+  private static boolean isConcurrentBean(String name)
+  {
+    return name.endsWith(" Cycles") || name.equals("G1 Concurrent GC");
+  }
+
+  /**
+   * insert the cache name before the extension of the output file
+   */
+  private static String cacheOutput(String output, String cache_name)
+  {
+    int dot = output.lastIndexOf('.');
+    if (dot <= output.lastIndexOf('/'))
     {
+      return output + "-" + cache_name;
     }
-    finally
+    return output.substring(0, dot) + "-" + cache_name + 
+           output.substring(dot);
+  }
+
+  /**
+   * display the throughput, allocation and jitter of each cache run
+   */
+  private static void displayComparison(GCStress runs[])
+  {
+    System.out.format("Cache      Threads  Ops/sec      Alloc MB/sec  " +
+                      "P99 delay   Max delay%n");
+    for (GCStress run : runs)
     {
-      hammer = null;
-      hammerThrd = null;
+      System.out.format("%-10s %7d  %-12.0f %-12.1f  %-10.6f  %.6f%n",
+                        run.cache_name, run.num_hammers, run.throughput(),
+                        run.allocRate(), 
+                        run.percentile(99.0d) / MICROS_PER_SECOND,
+                        run.dmax);
     }
+    System.out.println();
+  }
 
-    gcstress.displayResults();
-    System.out.println("Generating "+opt_output+"...");
-    gcstress.outputResults();
+  /**
+   * get the bytes allocated by the current thread, -1 if not supported
+   */
+  static long currentThreadAllocatedBytes()
+  {
+    try
+    {
+      ThreadMXBean tmb = ManagementFactory.getThreadMXBean();
+      if (tmb instanceof com.sun.management.ThreadMXBean)
+      {
+        com.sun.management.ThreadMXBean stmb = 
+          (com.sun.management.ThreadMXBean)tmb;
+        if (stmb.isThreadAllocatedMemorySupported() && 
+            stmb.isThreadAllocatedMemoryEnabled())
+        {
+          return stmb.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+      }
+    }
+    catch (LinkageError le)
+    {
+      // not a HotSpot derived VM
+    }
+    return -1L;
   }
 
-  //************************************************************************
-  //*                      PUBLIC INSTANCE METHODS                         *
-  //************************************************************************
+  /**
+   * get the name of this host for the CSV file
+   */
+  static String hostName()
+  {
+    try
+    {
+      return InetAddress.getLocalHost().getHostName();
+    }
+    catch (Exception e)
+    {
+      String name = System.getenv("HOSTNAME");
+      return (name != null) ? name : "unknown";
+    }
+  }
 
-  public void run()
+  /**
+   * get the cpu time of this process in nanoseconds, -1 if not supported
+   */
+  private static long processCpuNanos()
   {
-    performTest();
+    try
+    {
+      OperatingSystemMXBean osb = ManagementFactory.getOperatingSystemMXBean();
+      if (osb instanceof com.sun.management.OperatingSystemMXBean)
+      {
+        return ((com.sun.management.OperatingSystemMXBean)osb)
+          .getProcessCpuTime();
+      }
+    }
+    catch (LinkageError le)
+    {
+      // not a HotSpot derived VM
+    }
+    return -1L;
   }
 
-  //************************************************************************
-  //*                      PRIVATE INSTANCE METHODS                        *
-  //************************************************************************
+  /**
+   * get the cpu time of the current thread in nanoseconds, -1 if not 
+   * supported
+   */
+  static long currentThreadCpuNanos()
+  {
+    ThreadMXBean tmb = ManagementFactory.getThreadMXBean();
+    if (!tmb.isCurrentThreadCpuTimeSupported())
+    {
+      return -1L;
+    }
+    if (!tmb.isThreadCpuTimeEnabled())
+    {
+      tmb.setThreadCpuTimeEnabled(true);
+    }
+    return tmb.getCurrentThreadCpuTime();
+  }
 
   private static void usage()
   {
@@ -260,17 +828,39 @@ public class GCStress implements Runnable
     System.out.println("  --help           print this message");
     System.out.println("  --capacity=<num> set cache capacity (2000000)");
     System.out.println("  --maxsize=<num>  set cache entry max size (256)");
+    System.out.println("  --size-dist=<spec> set entry size distribution (uniform)");
+    System.out.println("  --cache=<names>  set comma list of caches to compare (private)");
+    System.out.println("  --threads=<num>  set number of hammer threads (1)");
     System.out.println("  --sleep=<num>    set sleep milliseconds (100)");
     System.out.println("  --samples=<num>  set number of samples (300)");
     System.out.println("  --output=<file>  set output csv file (gcstress.csv)");
+    System.out.println("  --seed=<num>     set hammer random seed (random)");
+    System.out.println("  --trace=<file>   replay hammer operations from trace file (off)");
+    System.out.println("  --trace-write=<file> write a trace file and exit (off)");
+    System.out.println("  --trace-ops=<num> set trace file operations (10000000)");
+    System.out.println("  --control[=<num>] run samples without stress first (off)");
+    System.out.println("  --control-burn   burn cpu during the control run (off)");
+    System.out.println("  --cgroup[=<num>] sample cgroup throttling every num ms (off, 10)");
   }
 
   private void initSampleData()
   {
     sample_index = 0;
+    sorted_micros = null;
     Arrays.fill(timestamp, 0L);
     Arrays.fill(mem_kilos, 0L);
     Arrays.fill(delay_micros, 0L);
+    Arrays.fill(gc_millis, 0L);
+    Arrays.fill(throttled_periods, -1L);
+    Arrays.fill(throttled_micros, -1L);
+    Arrays.fill(runq_micros, -1L);
+    Arrays.fill(load_avg, -1.0d);
+    gc_base = gcCollectionMillis(false);
+    if (cgroup != null)
+    {
+      cgroup_last = cgroup.getLatest();
+      throttling_last = cgroup.readThrottling();
+    }
   }
 
   private void addSample(long smpl)
@@ -278,9 +868,47 @@ public class GCStress implements Runnable
     timestamp[sample_index] = System.currentTimeMillis();
     Runtime rt = Runtime.getRuntime();
     mem_kilos[sample_index] = (rt.totalMemory() - rt.freeMemory()) / 1024;
+    gc_millis[sample_index] = gcCollectionMillis(false) - gc_base;
+    if (cgroup != null)
+    {
+      // read after the delay was measured and before the next sleep, so
+      // the delta covers exactly this sample's sleep
+      long throttling[] = cgroup.readThrottling();
+      throttled_periods[sample_index] = 
+        counterDelta(throttling[0], throttling_last[0]);
+      throttled_micros[sample_index] = 
+        counterDelta(throttling[1], throttling_last[1]);
+      throttling_last = throttling;
+      if (throttled_micros[sample_index] > 0)
+      {
+        throttled_micros[sample_index] /= 1000L;
+      }
+      // the sampler may lag by one of its sleeps, the deltas still add up
+      CgroupSnapshot snap = cgroup.getLatest();
+      runq_micros[sample_index] = 
+        counterDelta(snap.runq_nanos, cgroup_last.runq_nanos);
+      if (runq_micros[sample_index] > 0)
+      {
+        runq_micros[sample_index] /= 1000L;
+      }
+      load_avg[sample_index] = snap.load;
+      cgroup_last = snap;
+    }
     delay_micros[sample_index++] = smpl;
   }
 
+  /**
+   * the increase of a counter, -1 if not available
+   */
+  private static long counterDelta(long now, long before)
+  {
+    if (now < 0 || before < 0)
+    {
+      return -1L;
+    }
+    return Math.max(0L, now - before);
+  }
+
   private void displayResults()
   {
     long delay_max = Long.MIN_VALUE;
@@ -331,12 +959,271 @@ public class GCStress implements Runnable
     System.out.format("Samples: %d%n", sample_index);
     System.out.format("Max memory: %.1f KBytes%n", dmem_max);
     System.out.format("Min memory: %.1f KBytes%n", dmem_min);
+    if (sizes != null)
+    {
+      System.out.format("Size dist:  %s (mean %.1f bytes)%n", 
+                        sizes.getSpec(), sizes.getMean());
+    }
+    else if (size_spec != null)
+    {
+      System.out.format("Size dist:  %s (trace)%n", size_spec);
+    }
     System.out.format("Sleep time: %.6f seconds%n", 
                       (double)sleepTime / 1000.0d);
     System.out.format("Max delay:  %.6f seconds%n", dmax);
     System.out.format("Min delay:  %.6f seconds%n", dmin);
     System.out.format("Avg delay:  %.6f seconds%n", dmean);
     System.out.format("Std Dev:    %.6f seconds%n%n", std_dev);
+
+    displayAccounting();
+
+    if (cgroup != null)
+    {
+      displayCgroup();
+    }
+
+    if (control != null)
+    {
+      displayControl();
+    }
+  }
+
+  /**
+   * display the cpu overhead and mutator utilization of the run
+   */
+  private void displayAccounting()
+  {
+    double elapsed = (double)elapsed_nanos / NANOS_PER_SECOND;
+    double gc_time = (double)gc_nanos / NANOS_PER_SECOND;
+    System.out.format("Cache:      %s (%d hammer threads)%n", cache_name,
+                      num_hammers);
+    System.out.format("Throughput: %.0f ops/sec%n", throughput());
+    System.out.format("Alloc rate: %.1f MBytes/sec%s%n", allocRate(),
+                      (alloc_bytes >= 0) ? "" : " (payload only)");
+    System.out.format("Elapsed:    %.3f seconds%n", elapsed);
+    System.out.format("GC time:    %.3f seconds (%.1f%%)%n", gc_time, 
+                      100.0d * gc_time / elapsed);
+    System.out.format("GC cycles:  %.3f seconds concurrent%n", 
+                      (double)gc_concurrent_nanos / NANOS_PER_SECOND);
+    if (hammer_failure != null)
+    {
+      System.out.format("GC CPU overhead: hammer thread failed (%s)%n",
+                        hammer_failure);
+    }
+    else if (process_cpu_nanos >= 0 && hammer_cpu_nanos >= 0 && 
+             timer_cpu_nanos >= 0)
+    {
+      System.out.format("Process CPU: %.3f seconds%n", 
+                        (double)process_cpu_nanos / NANOS_PER_SECOND);
+      System.out.format("Hammer CPU: %.3f seconds%n", 
+                        (double)hammer_cpu_nanos / NANOS_PER_SECOND);
+      System.out.format("Timer CPU:  %.3f seconds%n", 
+                        (double)timer_cpu_nanos / NANOS_PER_SECOND);
+      System.out.format("GC CPU overhead: %.1f%%%n", gcCpuOverhead());
+    }
+    else
+    {
+      System.out.format("GC CPU overhead: not supported by this VM%n");
+    }
+
+    MMUCurve mmu = MMUCurve.compute(timestamp, gc_millis, sample_index);
+    System.out.format("MMU window   utilization%n");
+    for (int i = 0; i < mmu.size(); i++)
+    {
+      System.out.format("%8.3f s   %.3f%n", 
+                        mmu.getWindow(i), mmu.getUtilization(i));
+    }
+    System.out.println();
+  }
+
+  /**
+   * display the cgroup throttling and run queue wait and how well they
+   * explain the delays
+   */
+  private void displayCgroup()
+  {
+    long throttled = sumSamples(throttled_micros);
+    if (throttled >= 0)
+    {
+      System.out.format("Throttled:  %d periods, %.3f seconds (%s)%n",
+                        sumSamples(throttled_periods), 
+                        (double)throttled / MICROS_PER_SECOND,
+                        cgroup.getCpuStatFile());
+      System.out.format("Throttle correlation:  %.3f%n", 
+                        correlation(throttled_micros));
+      long p99 = percentile(99.0d);
+      int over = 0;
+      int over_throttled = 0;
+      for (int i = 0; i < sample_index; i++)
+      {
+        if (delay_micros[i] >= p99)
+        {
+          over++;
+          if (throttled_micros[i] > 0)
+          {
+            over_throttled++;
+          }
+        }
+      }
+      System.out.format("Throttled at P99 delay: %d of %d samples%n",
+                        over_throttled, over);
+    }
+    else
+    {
+      System.out.format("Throttled:  no cgroup cpu.stat found%n");
+    }
+    long runq = sumSamples(runq_micros);
+    if (runq >= 0)
+    {
+      System.out.format("Run queue wait: %.3f seconds%n", 
+                        (double)runq / MICROS_PER_SECOND);
+      System.out.format("Run queue correlation: %.3f%n", 
+                        correlation(runq_micros));
+    }
+    if (sample_index > 0 && load_avg[0] >= 0)
+    {
+      double load_min = Double.MAX_VALUE;
+      double load_max = 0.0d;
+      for (int i = 0; i < sample_index; i++)
+      {
+        load_min = Math.min(load_min, load_avg[i]);
+        load_max = Math.max(load_max, load_avg[i]);
+      }
+      System.out.format("Load average: %.2f to %.2f%n", load_min, load_max);
+    }
+    System.out.println();
+  }
+
+  /**
+   * the sum of a per sample counter, -1 if not available
+   */
+  private long sumSamples(long values[])
+  {
+    long sum = 0L;
+    for (int i = 0; i < sample_index; i++)
+    {
+      if (values[i] < 0)
+      {
+        return -1L;
+      }
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  /**
+   * the Pearson correlation of the delays with a per sample counter, 0 if
+   * either does not vary
+   */
+  private double correlation(long values[])
+  {
+    double mean_d = 0.0d;
+    double mean_v = 0.0d;
+    for (int i = 0; i < sample_index; i++)
+    {
+      mean_d += delay_micros[i];
+      mean_v += values[i];
+    }
+    mean_d /= sample_index;
+    mean_v /= sample_index;
+    double cov = 0.0d;
+    double var_d = 0.0d;
+    double var_v = 0.0d;
+    for (int i = 0; i < sample_index; i++)
+    {
+      double dd = delay_micros[i] - mean_d;
+      double dv = values[i] - mean_v;
+      cov += dd * dv;
+      var_d += dd * dd;
+      var_v += dv * dv;
+    }
+    if (var_d <= 0.0d || var_v <= 0.0d)
+    {
+      return 0.0d;
+    }
+    return cov / Math.sqrt(var_d * var_v);
+  }
+
+  /**
+   * the hammer operations per second of all hammer threads
+   */
+  private double throughput()
+  {
+    return (double)hammer_ops * NANOS_PER_SECOND / (double)elapsed_nanos;
+  }
+
+  /**
+   * the MBytes per second allocated by all hammer threads, from the VM if
+   * supported, otherwise only the payload arrays
+   */
+  private double allocRate()
+  {
+    long bytes = (alloc_bytes >= 0) ? alloc_bytes : payload_bytes;
+    return (double)bytes / (1024.0d * 1024.0d) * NANOS_PER_SECOND / 
+           (double)elapsed_nanos;
+  }
+
+  /**
+   * the percentage of process cpu time not used by the hammer and timer
+   * threads, which is mostly garbage collector work
+   */
+  private double gcCpuOverhead()
+  {
+    long mutator = hammer_cpu_nanos + timer_cpu_nanos;
+    if (process_cpu_nanos <= 0)
+    {
+      return 0.0d;
+    }
+    return Math.max(0.0d, 100.0d * (double)(process_cpu_nanos - mutator) / 
+                          (double)process_cpu_nanos);
+  }
+
+  /**
+   * display the control and stressed delay distributions side by side
+   */
+  private void displayControl()
+  {
+    System.out.format("Control samples: %d%n", control.sample_index);
+    System.out.format("Percentile   Control      Stressed     Difference%n");
+    for (int i = 0; i < PERCENTILES.length; i++)
+    {
+      double cval = control.percentile(PERCENTILES[i]) / MICROS_PER_SECOND;
+      double sval = percentile(PERCENTILES[i]) / MICROS_PER_SECOND;
+      System.out.format("%-10s  %10.6f   %10.6f   %10.6f%n",
+                        percentileLabel(PERCENTILES[i]), cval, sval, 
+                        sval - cval);
+    }
+    double cmax = control.percentile(100.0d) / MICROS_PER_SECOND;
+    System.out.format("%-10s  %10.6f   %10.6f   %10.6f%n%n",
+                      "Max", cmax, dmax, dmax - cmax);
+  }
+
+  /**
+   * get a delay percentile in microseconds using the nearest rank
+   */
+  private long percentile(double pct)
+  {
+    if (sample_index == 0)
+    {
+      return 0L;
+    }
+    if (sorted_micros == null)
+    {
+      sorted_micros = Arrays.copyOf(delay_micros, sample_index);
+      Arrays.sort(sorted_micros);
+    }
+    int rank = (int)Math.ceil(pct / 100.0d * sample_index) - 1;
+    rank = Math.max(0, Math.min(sample_index - 1, rank));
+    return sorted_micros[rank];
+  }
+
+  /**
+   * the label of a delay percentile, P99.9 or Max for 100
+   */
+  static String percentileLabel(double pct)
+  {
+    return (pct >= 100.0d) ? "Max" :
+      "P" + new DecimalFormat("0.###").format(pct);
   }
 
   private void outputResults()
@@ -352,8 +1239,25 @@ public class GCStress implements Runnable
                    QUOTE + vm_name + QUOTE + NEWLINE);
       outfw.append(QUOTE + "Date=" + QUOTE + COMMA +
                    QUOTE + sdf.format(date) + QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Host=" + QUOTE + COMMA +
+                   QUOTE + hostName() + QUOTE + NEWLINE);
       outfw.append(QUOTE + "Samples=" + QUOTE + COMMA + 
                    (num_samples) + NEWLINE);
+      if (seed != null)
+      {
+        outfw.append(QUOTE + "Seed=" + QUOTE + COMMA + 
+                     seed + NEWLINE);
+      }
+      if (trace_file != null)
+      {
+        outfw.append(QUOTE + "Trace=" + QUOTE + COMMA + 
+                     QUOTE + trace_file + QUOTE + NEWLINE);
+      }
+      if (size_spec != null)
+      {
+        outfw.append(QUOTE + "Size Distribution=" + QUOTE + COMMA + 
+                     QUOTE + size_spec + QUOTE + NEWLINE);
+      }
       outfw.append(QUOTE + "Max Memory=" + QUOTE + COMMA + 
                    String.format("%.1f", dmem_max) + NEWLINE);
       outfw.append(QUOTE + "Min Memory=" + QUOTE + COMMA + 
@@ -366,14 +1270,118 @@ public class GCStress implements Runnable
                    String.format("%.6f", dmean) + NEWLINE);
       outfw.append(QUOTE + "Std Dev=" + QUOTE + COMMA + 
                    String.format("%.6f", std_dev) + NEWLINE);
+      for (int i = 0; i < PERCENTILES.length; i++)
+      {
+        String label = percentileLabel(PERCENTILES[i]);
+        double sval = percentile(PERCENTILES[i]) / MICROS_PER_SECOND;
+        outfw.append(QUOTE + label + " Delay=" + QUOTE + COMMA + 
+                     String.format("%.6f", sval) + NEWLINE);
+      }
+      if (control != null)
+      {
+        outfw.append(QUOTE + "Control Samples=" + QUOTE + COMMA + 
+                     control.sample_index + NEWLINE);
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+          String label = percentileLabel(PERCENTILES[i]);
+          double cval = control.percentile(PERCENTILES[i]) / MICROS_PER_SECOND;
+          double sval = percentile(PERCENTILES[i]) / MICROS_PER_SECOND;
+          outfw.append(QUOTE + "Control " + label + " Delay=" + QUOTE + 
+                       COMMA + String.format("%.6f", cval) + NEWLINE);
+          outfw.append(QUOTE + "Diff " + label + " Delay=" + QUOTE + 
+                       COMMA + String.format("%.6f", sval - cval) + NEWLINE);
+        }
+        double cmax = control.percentile(100.0d) / MICROS_PER_SECOND;
+        outfw.append(QUOTE + "Control Max Delay=" + QUOTE + COMMA + 
+                     String.format("%.6f", cmax) + NEWLINE);
+        outfw.append(QUOTE + "Diff Max Delay=" + QUOTE + COMMA + 
+                     String.format("%.6f", dmax - cmax) + NEWLINE);
+      }
+      outfw.append(QUOTE + "Cache=" + QUOTE + COMMA + 
+                   QUOTE + cache_name + QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Threads=" + QUOTE + COMMA + 
+                   num_hammers + NEWLINE);
+      outfw.append(QUOTE + "Hammer Ops=" + QUOTE + COMMA + 
+                   hammer_ops + NEWLINE);
+      outfw.append(QUOTE + "Throughput=" + QUOTE + COMMA + 
+                   String.format("%.0f", throughput()) + NEWLINE);
+      outfw.append(QUOTE + "Alloc Rate=" + QUOTE + COMMA + 
+                   String.format("%.1f", allocRate()) + NEWLINE);
+      outfw.append(QUOTE + "Elapsed=" + QUOTE + COMMA + 
+                   String.format("%.3f", 
+                                 (double)elapsed_nanos / NANOS_PER_SECOND) +
+                   NEWLINE);
+      outfw.append(QUOTE + "GC Time=" + QUOTE + COMMA + 
+                   String.format("%.3f", 
+                                 (double)gc_nanos / NANOS_PER_SECOND) +
+                   NEWLINE);
+      outfw.append(QUOTE + "GC Concurrent Time=" + QUOTE + COMMA + 
+                   String.format("%.3f", (double)gc_concurrent_nanos / 
+                                         NANOS_PER_SECOND) + NEWLINE);
+      if (hammer_failure != null)
+      {
+        outfw.append(QUOTE + "Hammer Failure=" + QUOTE + COMMA + 
+                     QUOTE + hammer_failure.replace("\"", "'")
+                                           .replace(",", ";") + 
+                     QUOTE + NEWLINE);
+      }
+      else if (process_cpu_nanos >= 0 && hammer_cpu_nanos >= 0 && 
+               timer_cpu_nanos >= 0)
+      {
+        outfw.append(QUOTE + "Process CPU=" + QUOTE + COMMA + 
+                     String.format("%.3f", (double)process_cpu_nanos / 
+                                           NANOS_PER_SECOND) + NEWLINE);
+        outfw.append(QUOTE + "Hammer CPU=" + QUOTE + COMMA + 
+                     String.format("%.3f", (double)hammer_cpu_nanos / 
+                                           NANOS_PER_SECOND) + NEWLINE);
+        outfw.append(QUOTE + "Timer CPU=" + QUOTE + COMMA + 
+                     String.format("%.3f", (double)timer_cpu_nanos / 
+                                           NANOS_PER_SECOND) + NEWLINE);
+        outfw.append(QUOTE + "GC CPU Overhead=" + QUOTE + COMMA + 
+                     String.format("%.1f", gcCpuOverhead()) + NEWLINE);
+      }
+      if (cgroup != null)
+      {
+        outputCgroup(outfw);
+      }
+      MMUCurve mmu = MMUCurve.compute(timestamp, gc_millis, sample_index);
+      for (int i = 0; i < mmu.size(); i++)
+      {
+        outfw.append(QUOTE + "MMU " + 
+                     String.format("%.3f", mmu.getWindow(i)) + "=" + QUOTE + 
+                     COMMA + String.format("%.3f", mmu.getUtilization(i)) + 
+                     NEWLINE);
+      }
+      // mergeable form of the delays for GCStressMerge
+      DelayHistogram dh = new DelayHistogram();
+      for (int i = 0; i < sample_index; i++)
+      {
+        dh.record(delay_micros[i]);
+      }
+      outfw.append(QUOTE + "Histogram=" + QUOTE + COMMA + 
+                   QUOTE + dh.encode() + QUOTE + NEWLINE);
       outfw.append(QUOTE + "Time" + QUOTE + COMMA +
                    QUOTE + "Used Memory" + QUOTE + COMMA +
-                   QUOTE + "Delay" + QUOTE + NEWLINE);
+                   QUOTE + "Delay" + QUOTE + COMMA +
+                   QUOTE + "GC Time" + QUOTE + 
+                   ((cgroup != null) 
+                    ? COMMA + QUOTE + "Throttled Periods" + QUOTE + 
+                      COMMA + QUOTE + "Throttled Time" + QUOTE + 
+                      COMMA + QUOTE + "Run Queue Wait" + QUOTE + 
+                      COMMA + QUOTE + "Load Average" + QUOTE 
+                    : "") + NEWLINE);
       for (int i = 0; i < sample_index; i++)
       {
         outfw.append(timestamp[i] + COMMA +
                      (mem_kilos[i]) + COMMA +
-                     delay_micros[i] + NEWLINE);
+                     delay_micros[i] + COMMA +
+                     gc_millis[i] + 
+                     ((cgroup != null) 
+                      ? COMMA + throttled_periods[i] + 
+                        COMMA + throttled_micros[i] + 
+                        COMMA + runq_micros[i] + 
+                        COMMA + String.format("%.2f", load_avg[i])
+                      : "") + NEWLINE);
       }
       outfw.flush();
       outfw.close();
@@ -385,6 +1393,37 @@ public class GCStress implements Runnable
     }
   }
 
+  /**
+   * write the cgroup throttling and run queue totals and correlations
+   */
+  private void outputCgroup(FileWriter outfw) throws IOException
+  {
+    long throttled = sumSamples(throttled_micros);
+    if (throttled >= 0)
+    {
+      outfw.append(QUOTE + "Cgroup CPU Stat=" + QUOTE + COMMA + 
+                   QUOTE + cgroup.getCpuStatFile() + QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Throttled Periods=" + QUOTE + COMMA + 
+                   sumSamples(throttled_periods) + NEWLINE);
+      outfw.append(QUOTE + "Throttled Time=" + QUOTE + COMMA + 
+                   String.format("%.6f", (double)throttled / 
+                                         MICROS_PER_SECOND) + NEWLINE);
+      outfw.append(QUOTE + "Throttle Correlation=" + QUOTE + COMMA + 
+                   String.format("%.3f", correlation(throttled_micros)) + 
+                   NEWLINE);
+    }
+    long runq = sumSamples(runq_micros);
+    if (runq >= 0)
+    {
+      outfw.append(QUOTE + "Run Queue Wait=" + QUOTE + COMMA + 
+                   String.format("%.6f", (double)runq / MICROS_PER_SECOND) + 
+                   NEWLINE);
+      outfw.append(QUOTE + "Run Queue Correlation=" + QUOTE + COMMA + 
+                   String.format("%.3f", correlation(runq_micros)) + 
+                   NEWLINE);
+    }
+  }
+
   //************************************************************************
   //*                      PROTECTED INSTANCE METHODS                      *
   //************************************************************************
@@ -416,6 +1455,7 @@ public class GCStress implements Runnable
 
       addSample(delay / 1000);
     }
+    timer_cpu_nanos = currentThreadCpuNanos();
   }
 }
  
@@ -424,43 +1464,14 @@ public class GCStress implements Runnable
   //************************************************************************
 
 /**
- * A subclass of LinkedHashMap with a capacity
- */
-class LinkedHashMapWithCapacity<K,V> extends LinkedHashMap<K,V> 
-{
-  private static final long serialVersionUID = 1L;
-
-  private int capacity;
-
-  public LinkedHashMapWithCapacity(int capacity) 
-  {
-    super(capacity, 0.75f, true);
-    this.capacity = capacity;
-  }
-
-  @Override
-  protected boolean removeEldestEntry(Map.Entry<K,V> eldest) 
-  {
-    return this.size() > this.capacity;
-  }
-}
-
-/**
- * The GCHammer class mutates heap memory
+ * The CPUBurner class keeps a core busy without allocating heap memory
  */
-class GCHammer implements Runnable 
+class CPUBurner implements Runnable
 {
-  private int capacity;
-  private int maxsize;
-  private LinkedHashMapWithCapacity<Integer,Object> map;
-  private boolean stop = false;
+  private volatile boolean stop = false;
 
-  public GCHammer(int capacity, int maxsize) 
-  {
-    this.capacity = capacity;
-    this.maxsize = maxsize;
-    this.map = new LinkedHashMapWithCapacity<>(capacity);
-  }
+  // keeps the loop from being optimized away
+  private long sink;
 
   public void stop()
   {
@@ -469,22 +1480,17 @@ class GCHammer implements Runnable
 
   public void run()
   {
-    Random rand = new Random();
+    long x = System.nanoTime() | 1L;
     while (!stop)
     {
-      int key = rand.nextInt(capacity);
-      int size = rand.nextInt(maxsize);
-      byte[] val = (byte[])map.get(key);
-      if (val == null)
-      {
-        // if the cache entry is empty, fill it
-        map.put(key, new byte[size]);
-      }
-      else
+      for (int i = 0; i < 10000; i++)
       {
-        // otherwise, remove it
-        val = (byte[])map.remove(key);
+        // xorshift step
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
       }
     }
+    sink = x;
   }
 }
@@ -0,0 +1,107 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * Runs a GCProbe inside another application, either from the command
+ * line with -javaagent:gcstress.jar[=<options>] or attached to a running
+ * JVM. The options are separated by commas:
+ *
+ *   sleep=<num>            timer sleep milliseconds (10)
+ *   interval=<num>         log interval milliseconds (10000)
+ *   log=<file>             interval log file (gcprobe.csv)
+ *   hammer=<num>[:<num>]   also hammer a cache of this capacity and max
+ *                          entry size (off)
+ */
+public class GCStressAgent
+{
+  /**
+   * Private static fields
+   */
+  private static String LOG_FILE = "gcprobe.csv";
+  private static GCProbe probe;
+
+  //************************************************************************
+  //*                      PUBLIC STATIC METHODS                           *
+  //************************************************************************
+
+  public static void premain(String args, Instrumentation inst)
+  {
+    startProbe(args);
+  }
+
+  public static void agentmain(String args, Instrumentation inst)
+  {
+    startProbe(args);
+  }
+
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
+  private static synchronized void startProbe(String args)
+  {
+    if (probe != null)
+    {
+      System.err.println("GCStressAgent: probe already running");
+      return;
+    }
+    GCProbe.Builder builder = new GCProbe.Builder().logFile(LOG_FILE);
+    try
+    {
+      if (args != null && args.length() > 0)
+      {
+        for (String arg : args.split(","))
+        {
+          String value = arg.substring(arg.indexOf('=') + 1);
+          if (arg.startsWith("sleep="))
+          {
+            builder.sleepMillis(Long.parseLong(value));
+          }
+          else if (arg.startsWith("interval="))
+          {
+            builder.intervalMillis(Long.parseLong(value));
+          }
+          else if (arg.startsWith("log="))
+          {
+            builder.logFile(value);
+          }
+          else if (arg.startsWith("hammer="))
+          {
+            String vals[] = value.split(":");
+            builder.hammer(Integer.parseInt(vals[0]),
+                           (vals.length > 1) ? Integer.parseInt(vals[1])
+                                             : 256);
+          }
+          else
+          {
+            throw new IllegalArgumentException("Unknown option: "+arg);
+          }
+        }
+      }
+      probe = builder.build();
+      probe.start();
+    }
+    catch (Exception e)
+    {
+      // never take the application down with the probe
+      System.err.println("GCStressAgent: not started: "+e);
+      probe = null;
+      return;
+    }
+
+    // log the last partial interval on exit
+    Runtime.getRuntime().addShutdownHook(new Thread("GCProbe Shutdown") {
+      public void run()
+      {
+        probe.stop();
+      }
+    });
+  }
+}
@@ -0,0 +1,396 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the delays of a candidate GCStress run against a baseline run
+ * and exits with status 1 when the gate percentile regresses by more than
+ * the threshold with statistical significance.
+ */
+public class GCStressCompare
+{
+  /**
+   * Private static fields
+   */
+  private static double PERCENTILES[] = { 50.0d, 90.0d, 99.0d, 99.9d, 100.0d };
+  private static double GATE_PERCENTILE = 99.0d;
+  private static double THRESHOLD = 10.0d;
+  private static int BOOTSTRAP = 1000;
+  private static double CONFIDENCE = 95.0d;
+  private static long SEED = 1L;
+  private static double MICROS_PER_SECOND = 1000.0d * 1000.0d;
+
+  //************************************************************************
+  //*                      PUBLIC STATIC METHODS                           *
+  //************************************************************************
+
+  public static void main(String[] args)
+  {
+    String opt_baseline = null;
+    String opt_candidate = null;
+    double opt_percentile = GATE_PERCENTILE;
+    double opt_threshold = THRESHOLD;
+    int opt_bootstrap = BOOTSTRAP;
+    double opt_confidence = CONFIDENCE;
+    long opt_seed = SEED;
+    String opt_format = "markdown";
+
+    // check command line args
+    for (int i = 0; i < args.length; i++)
+    {
+      String value = args[i].substring(args[i].indexOf('=') + 1);
+      try
+      {
+        if (args[i].equals("-h") || args[i].equals("--help"))
+        {
+          usage();
+          System.exit(0);
+        }
+        else if (args[i].startsWith("--baseline="))
+        {
+          opt_baseline = value;
+        }
+        else if (args[i].startsWith("--candidate="))
+        {
+          opt_candidate = value;
+        }
+        else if (args[i].startsWith("--percentile="))
+        {
+          opt_percentile = Double.parseDouble(value);
+          if (!(opt_percentile > 0.0d && opt_percentile < 100.0d))
+          {
+            throw new NumberFormatException(value);
+          }
+        }
+        else if (args[i].startsWith("--threshold="))
+        {
+          opt_threshold = Double.parseDouble(value);
+        }
+        else if (args[i].startsWith("--bootstrap="))
+        {
+          opt_bootstrap = Integer.parseInt(value);
+          if (opt_bootstrap < 1)
+          {
+            throw new NumberFormatException(value);
+          }
+        }
+        else if (args[i].startsWith("--confidence="))
+        {
+          opt_confidence = Double.parseDouble(value);
+          if (!(opt_confidence > 0.0d && opt_confidence < 100.0d))
+          {
+            throw new NumberFormatException(value);
+          }
+        }
+        else if (args[i].startsWith("--seed="))
+        {
+          opt_seed = Long.parseLong(value);
+        }
+        else if (args[i].startsWith("--format="))
+        {
+          opt_format = value;
+          if (!opt_format.equals("markdown") && !opt_format.equals("csv"))
+          {
+            throw new NumberFormatException(value);
+          }
+        }
+        else
+        {
+          System.err.println("Unknown option: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      catch (NumberFormatException nfe)
+      {
+        System.err.println("Bad value: "+args[i]);
+        usage();
+        System.exit(-1);
+      }
+    }
+    if (opt_baseline == null || opt_candidate == null)
+    {
+      System.err.println("Both --baseline and --candidate are required");
+      usage();
+      System.exit(-1);
+    }
+
+    long base[] = readDelays(opt_baseline);
+    long cand[] = readDelays(opt_candidate);
+    SplittableRandom rand = new SplittableRandom(opt_seed);
+
+    // percentile deltas with bootstrap confidence intervals
+    double pcts[] = Arrays.copyOf(PERCENTILES, PERCENTILES.length + 1);
+    pcts[PERCENTILES.length] = opt_percentile;
+    Arrays.sort(pcts);
+    pcts = Arrays.stream(pcts).distinct().toArray();
+    double ci[][] = bootstrap(base, cand, pcts, opt_bootstrap,
+                              opt_confidence, rand);
+    double ks[] = kolmogorovSmirnov(base, cand);
+
+    // regression only when the gate delta is over the threshold and the
+    // whole confidence interval is above zero
+    int gate = Arrays.binarySearch(pcts, opt_percentile);
+    double base_gate = percentile(base, opt_percentile);
+    double cand_gate = percentile(cand, opt_percentile);
+    double gate_pct = deltaPercent(base_gate, cand_gate);
+    boolean regressed = gate_pct > opt_threshold && ci[gate][0] > 0.0d;
+
+    String verdict = (regressed ? "REGRESSION" : "PASS") + " at " +
+      GCStress.percentileLabel(opt_percentile) + ": " +
+      String.format("%+.1f%%", gate_pct) + " (threshold " +
+      String.format("%.1f%%", opt_threshold) + ", " +
+      String.format("%.0f%%", opt_confidence) + " CI " +
+      String.format("%+.6f..%+.6f", ci[gate][0] / MICROS_PER_SECOND,
+                    ci[gate][1] / MICROS_PER_SECOND) + " sec)";
+
+    if (opt_format.equals("csv"))
+    {
+      printCSV(base, cand, pcts, ci, ks, verdict);
+    }
+    else
+    {
+      printMarkdown(opt_baseline, opt_candidate, base, cand, pcts, ci, ks,
+                    opt_confidence, verdict);
+    }
+    System.exit(regressed ? 1 : 0);
+  }
+
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
+  private static void usage()
+  {
+    System.out.println("Usage: GCStressCompare <options>");
+    System.out.println("  where <options> can be: (default)");
+    System.out.println("  --help             print this message");
+    System.out.println("  --baseline=<file>  set baseline csv file (required)");
+    System.out.println("  --candidate=<file> set candidate csv file (required)");
+    System.out.println("  --percentile=<num> set gate percentile (99)");
+    System.out.println("  --threshold=<num>  set allowed regression percent (10)");
+    System.out.println("  --bootstrap=<num>  set bootstrap resamples (1000)");
+    System.out.println("  --confidence=<num> set confidence interval percent (95)");
+    System.out.println("  --seed=<num>       set bootstrap random seed (1)");
+    System.out.println("  --format=<fmt>     set verdict format markdown or csv (markdown)");
+    System.out.println("  The Kolmogorov-Smirnov test is informational; only the gate");
+    System.out.println("  percentile and its confidence interval set the exit status.");
+  }
+
+  /**
+   * read the delay samples of a result file, sorted. Merged files from
+   * GCStressMerge have only a histogram, which is expanded to its bucket
+   * values, so their delays are known within 1/128.
+   */
+  private static long[] readDelays(String file)
+  {
+    CSVData csvd = CSVData.read(file);
+    int size = csvd.getSize();
+    if (size == 0)
+    {
+      DelayHistogram dh = csvd.getHistogram();
+      if (dh.getCount() == 0)
+      {
+        System.err.println("No delay samples or histogram in "+file);
+        System.exit(-1);
+      }
+      try
+      {
+        return dh.toSortedValues();
+      }
+      catch (IllegalStateException ise)
+      {
+        System.err.println("Cannot compare "+file+": "+ise.getMessage());
+        System.exit(-1);
+      }
+    }
+    long delays[] = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      delays[i] = csvd.getSample(i).delay_micros;
+    }
+    Arrays.sort(delays);
+    return delays;
+  }
+
+  /**
+   * get a percentile of sorted samples using the nearest rank
+   */
+  private static long percentile(long sorted[], double pct)
+  {
+    int rank = (int)Math.ceil(pct / 100.0d * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+  }
+
+  /**
+   * bootstrap confidence intervals of candidate minus baseline at each
+   * percentile, in microseconds
+   */
+  private static double[][] bootstrap(long base[], long cand[],
+                                      double pcts[], int resamples,
+                                      double confidence,
+                                      SplittableRandom rand)
+  {
+    double deltas[][] = new double[pcts.length][resamples];
+    long base_rs[] = new long[base.length];
+    long cand_rs[] = new long[cand.length];
+    for (int r = 0; r < resamples; r++)
+    {
+      resample(base, base_rs, rand);
+      resample(cand, cand_rs, rand);
+      for (int p = 0; p < pcts.length; p++)
+      {
+        deltas[p][r] = percentile(cand_rs, pcts[p]) -
+                       percentile(base_rs, pcts[p]);
+      }
+    }
+    double tail = (100.0d - confidence) / 2.0d;
+    double ci[][] = new double[pcts.length][2];
+    for (int p = 0; p < pcts.length; p++)
+    {
+      Arrays.sort(deltas[p]);
+      int lo = (int)Math.floor(tail / 100.0d * resamples);
+      int hi = (int)Math.ceil((100.0d - tail) / 100.0d * resamples) - 1;
+      ci[p][0] = deltas[p][Math.max(0, Math.min(resamples - 1, lo))];
+      ci[p][1] = deltas[p][Math.max(0, Math.min(resamples - 1, hi))];
+    }
+    return ci;
+  }
+
+  /**
+   * draw with replacement from sorted samples; drawing sorted indices
+   * keeps the result sorted
+   */
+  private static void resample(long sorted[], long out[],
+                               SplittableRandom rand)
+  {
+    int counts[] = new int[sorted.length];
+    for (int i = 0; i < out.length; i++)
+    {
+      counts[rand.nextInt(sorted.length)]++;
+    }
+    int pos = 0;
+    for (int i = 0; i < counts.length; i++)
+    {
+      for (int c = 0; c < counts[i]; c++)
+      {
+        out[pos++] = sorted[i];
+      }
+    }
+  }
+
+  /**
+   * two-sample Kolmogorov-Smirnov test on sorted samples, returns the
+   * D statistic and the asymptotic p-value
+   */
+  private static double[] kolmogorovSmirnov(long a[], long b[])
+  {
+    int i = 0;
+    int j = 0;
+    double d = 0.0d;
+    while (i < a.length && j < b.length)
+    {
+      long value = Math.min(a[i], b[j]);
+      while (i < a.length && a[i] == value)
+      {
+        i++;
+      }
+      while (j < b.length && b[j] == value)
+      {
+        j++;
+      }
+      d = Math.max(d, Math.abs((double)i / a.length - (double)j / b.length));
+    }
+    double ne = (double)a.length * b.length / (a.length + b.length);
+    double sqrt_ne = Math.sqrt(ne);
+    double lambda = (sqrt_ne + 0.12d + 0.11d / sqrt_ne) * d;
+    double p = 0.0d;
+    if (lambda < 0.2d)
+    {
+      p = 1.0d;
+    }
+    else
+    {
+      for (int k = 1; k <= 100; k++)
+      {
+        double term = Math.exp(-2.0d * k * k * lambda * lambda);
+        p += ((k % 2 == 1) ? 2.0d : -2.0d) * term;
+        if (term < 1.0e-12d)
+        {
+          break;
+        }
+      }
+      p = Math.max(0.0d, Math.min(1.0d, p));
+    }
+    return new double[] { d, p };
+  }
+
+  private static double deltaPercent(double base, double cand)
+  {
+    // delays under a microsecond count as one to avoid dividing by zero
+    return 100.0d * (cand - base) / Math.max(1.0d, Math.abs(base));
+  }
+
+  private static void printMarkdown(String base_file, String cand_file,
+                                    long base[], long cand[],
+                                    double pcts[], double ci[][],
+                                    double ks[], double confidence,
+                                    String verdict)
+  {
+    System.out.println("## GC Stress Compare");
+    System.out.println();
+    System.out.println("Baseline: " + base_file + " (" + base.length +
+                       " samples)  ");
+    System.out.println("Candidate: " + cand_file + " (" + cand.length +
+                       " samples)");
+    System.out.println();
+    System.out.format("| Percentile | Baseline | Candidate | Delta | " +
+                      "Delta %% | %.0f%% CI |%n", confidence);
+    System.out.println("|---|---:|---:|---:|---:|---|");
+    for (int p = 0; p < pcts.length; p++)
+    {
+      long b = percentile(base, pcts[p]);
+      long c = percentile(cand, pcts[p]);
+      System.out.format("| %s | %.6f | %.6f | %+.6f | %+.1f%% | " +
+                        "%+.6f..%+.6f |%n",
+                        GCStress.percentileLabel(pcts[p]),
+                        b / MICROS_PER_SECOND, c / MICROS_PER_SECOND,
+                        (c - b) / MICROS_PER_SECOND, deltaPercent(b, c),
+                        ci[p][0] / MICROS_PER_SECOND,
+                        ci[p][1] / MICROS_PER_SECOND);
+    }
+    System.out.println();
+    System.out.format("Kolmogorov-Smirnov (informational): D=%.4f p=%.4g%n",
+                      ks[0], ks[1]);
+    System.out.println();
+    System.out.println("**" + verdict + "**");
+  }
+
+  private static void printCSV(long base[], long cand[], double pcts[],
+                               double ci[][], double ks[], String verdict)
+  {
+    System.out.println("\"Percentile\",\"Baseline\",\"Candidate\"," +
+                       "\"Delta\",\"Delta Percent\",\"CI Low\",\"CI High\"");
+    for (int p = 0; p < pcts.length; p++)
+    {
+      long b = percentile(base, pcts[p]);
+      long c = percentile(cand, pcts[p]);
+      System.out.format("\"%s\",%.6f,%.6f,%.6f,%.1f,%.6f,%.6f%n",
+                        GCStress.percentileLabel(pcts[p]),
+                        b / MICROS_PER_SECOND, c / MICROS_PER_SECOND,
+                        (c - b) / MICROS_PER_SECOND, deltaPercent(b, c),
+                        ci[p][0] / MICROS_PER_SECOND,
+                        ci[p][1] / MICROS_PER_SECOND);
+    }
+    System.out.format("\"KS D=\",%.4f%n", ks[0]);
+    System.out.format("\"KS P=\",%.4g%n", ks[1]);
+    System.out.println("\"Verdict=\",\"" + verdict + "\"");
+  }
+}
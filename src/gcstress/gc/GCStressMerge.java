@@ -0,0 +1,349 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.text.SimpleDateFormat;
+
+public class GCStressMerge
+{
+  /**
+   * Private static fields
+   */
+  private static double OUTLIER_FACTOR = 2.0d;
+  // the same percentiles as single runs, so the CSV keys match
+  private static double PERCENTILES[] = GCStress.PERCENTILES;
+  private static double MICROS_PER_SECOND = 1000.0d * 1000.0d;
+  private static String COMMA = ",";
+  private static String QUOTE = "\"";
+  private static String NEWLINE = "\n";
+  private static String DATEFORMAT = "yyyy-MM-dd HH:mm:ss";
+
+  //************************************************************************
+  //*                      PUBLIC STATIC METHODS                           *
+  //************************************************************************
+
+  public static void main(String[] args) throws Throwable
+  {
+    double opt_outlier = OUTLIER_FACTOR;
+    int opt_threads = Runtime.getRuntime().availableProcessors();
+    String opt_output = null;
+    List<String> files = new ArrayList<String>();
+
+    // check command line args
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i].equals("-h") || args[i].equals("--help"))
+      {
+        usage();
+        System.exit(0);
+      }
+      else if (args[i].startsWith("--outlier="))
+      {
+        try
+        {
+          opt_outlier =
+            Double.parseDouble(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad outlier factor: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--threads="))
+      {
+        try
+        {
+          opt_threads =
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad threads: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else if (args[i].startsWith("--output="))
+      {
+        opt_output = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--"))
+      {
+        System.err.println("Unknown option: "+args[i]);
+        usage();
+        System.exit(-1);
+      }
+      else
+      {
+        files.add(args[i]);
+      }
+    }
+    if (files.isEmpty())
+    {
+      System.err.println("No input files");
+      usage();
+      System.exit(-1);
+    }
+
+    System.out.println("Merging GC Stress results: files="+files.size()+
+                       " threads="+opt_threads);
+
+    // read and decode the files in parallel
+    ExecutorService pool = 
+      Executors.newFixedThreadPool(Math.max(1, opt_threads));
+    List<Future<List<HostResult>>> futures =
+      new ArrayList<Future<List<HostResult>>>();
+    for (final String file : files)
+    {
+      futures.add(pool.submit(() -> readResult(file)));
+    }
+
+    // merge per host and for the whole fleet
+    Map<String,HostResult> hosts = new TreeMap<String,HostResult>();
+    HostResult all = new HostResult("All");
+    for (Future<List<HostResult>> future : futures)
+    {
+      for (HostResult result : future.get())
+      {
+        HostResult host = hosts.get(result.name);
+        if (host == null)
+        {
+          host = new HostResult(result.name);
+          hosts.put(result.name, host);
+        }
+        host.add(result);
+        all.add(result);
+      }
+    }
+    pool.shutdown();
+
+    displayResults(hosts, all, opt_outlier);
+    if (opt_output != null)
+    {
+      System.out.println("Generating "+opt_output+"...");
+      outputResults(opt_output, hosts, all);
+    }
+  }
+
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
+  private static void usage()
+  {
+    System.out.println("Usage: GCStressMerge <options> <file>...");
+    System.out.println("  where <options> can be: (default)");
+    System.out.println("  --help           print this message");
+    System.out.println("  --outlier=<num>  flag hosts with P99 over num times the median (2.0)");
+    System.out.println("  --threads=<num>  set number of reader threads (cpus)");
+    System.out.println("  --output=<file>  set merged output csv file (none)");
+  }
+
+  /**
+   * read the histogram of one result file, or the per host histograms of
+   * a merged file
+   */
+  private static List<HostResult> readResult(String file)
+  {
+    CSVData csvd = CSVData.read(file);
+    List<HostResult> results = new ArrayList<HostResult>();
+    String hosts = csvd.getValue("Hosts");
+    if (hosts.length() > 0)
+    {
+      for (String name : hosts.split(";"))
+      {
+        String encoded = csvd.getValue("Host Histogram " + name);
+        if (encoded.length() == 0)
+        {
+          // merged by an older release, only the total is known
+          results.clear();
+          break;
+        }
+        HostResult result = new HostResult(name);
+        result.histogram.add(DelayHistogram.decode(encoded));
+        String runs = csvd.getValue("Host Runs " + name);
+        result.runs = (runs.length() > 0) ? Integer.parseInt(runs) : 1;
+        results.add(result);
+      }
+      if (!results.isEmpty())
+      {
+        return results;
+      }
+    }
+
+    String host = csvd.getValue("Host");
+    if (host.length() == 0)
+    {
+      host = new File(file).getName();
+    }
+    HostResult result = new HostResult(host);
+    result.histogram.add(csvd.getHistogram());
+    String runs = csvd.getValue("Runs");
+    result.runs = (runs.length() > 0) ? Integer.parseInt(runs) : 1;
+    results.add(result);
+    return results;
+  }
+
+  /**
+   * display per host and combined percentiles and flag outlier hosts
+   */
+  private static void displayResults(Map<String,HostResult> hosts,
+                                     HostResult all,
+                                     double outlier)
+  {
+    // hosts far above the median P99 are outliers
+    double p99s[] = new double[hosts.size()];
+    int index = 0;
+    for (HostResult host : hosts.values())
+    {
+      p99s[index++] = host.histogram.percentile(99.0d);
+    }
+    Arrays.sort(p99s);
+    double median = (p99s.length % 2 == 1) ? p99s[p99s.length / 2] :
+      (p99s[p99s.length / 2 - 1] + p99s[p99s.length / 2]) / 2.0d;
+
+    System.out.format("%-24s %5s %10s", "Host", "Runs", "Samples");
+    for (int i = 0; i < PERCENTILES.length; i++)
+    {
+      System.out.format(" %10s", GCStress.percentileLabel(PERCENTILES[i]));
+    }
+    System.out.format(" %10s%n", "Max");
+    int outliers = 0;
+    for (HostResult host : hosts.values())
+    {
+      boolean is_outlier = median > 0.0d &&
+        host.histogram.percentile(99.0d) > outlier * median;
+      displayRow(host, is_outlier);
+      if (is_outlier)
+      {
+        outliers++;
+      }
+    }
+    displayRow(all, false);
+    System.out.format("%nHosts: %d%n", hosts.size());
+    System.out.format("Median host P99: %.6f seconds%n",
+                      median / MICROS_PER_SECOND);
+    System.out.format("Outlier hosts: %d (P99 over %.1f times median)%n%n",
+                      outliers, outlier);
+  }
+
+  private static void displayRow(HostResult host, boolean is_outlier)
+  {
+    DelayHistogram dh = host.histogram;
+    System.out.format("%-24s %5d %10d", host.name, host.runs, dh.getCount());
+    for (int i = 0; i < PERCENTILES.length; i++)
+    {
+      System.out.format(" %10.6f",
+                        dh.percentile(PERCENTILES[i]) / MICROS_PER_SECOND);
+    }
+    System.out.format(" %10.6f%s%n", dh.getMax() / MICROS_PER_SECOND,
+                      is_outlier ? "  OUTLIER" : "");
+  }
+
+  /**
+   * write the merged histogram in the GCStress CSV format, with the list
+   * of hosts and the histogram of each, so merged files can be merged
+   * again without losing the hosts
+   */
+  private static void outputResults(String output_file,
+                                    Map<String,HostResult> hosts,
+                                    HostResult all)
+  {
+    DelayHistogram dh = all.histogram;
+    SimpleDateFormat sdf = new SimpleDateFormat(DATEFORMAT);
+    try
+    {
+      FileWriter outfw = new FileWriter(output_file);
+      outfw.append(QUOTE + "Test=" + QUOTE + COMMA +
+                   QUOTE + "GC Stress Merge" + QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Date=" + QUOTE + COMMA +
+                   QUOTE + sdf.format(new Date()) + QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Host=" + QUOTE + COMMA +
+                   QUOTE + (hosts.size() == 1 ?
+                            hosts.keySet().iterator().next() : "Merged") +
+                   QUOTE + NEWLINE);
+      outfw.append(QUOTE + "Hosts=" + QUOTE + COMMA +
+                   QUOTE + String.join(";", hosts.keySet()) + QUOTE +
+                   NEWLINE);
+      outfw.append(QUOTE + "Runs=" + QUOTE + COMMA +
+                   all.runs + NEWLINE);
+      outfw.append(QUOTE + "Samples=" + QUOTE + COMMA +
+                   dh.getCount() + NEWLINE);
+      outfw.append(QUOTE + "Max Delay=" + QUOTE + COMMA +
+                   String.format("%.6f", dh.getMax() / MICROS_PER_SECOND) +
+                   NEWLINE);
+      outfw.append(QUOTE + "Min Delay=" + QUOTE + COMMA +
+                   String.format("%.6f", dh.getMin() / MICROS_PER_SECOND) +
+                   NEWLINE);
+      outfw.append(QUOTE + "Avg Delay=" + QUOTE + COMMA +
+                   String.format("%.6f", dh.getMean() / MICROS_PER_SECOND) +
+                   NEWLINE);
+      for (int i = 0; i < PERCENTILES.length; i++)
+      {
+        outfw.append(QUOTE + GCStress.percentileLabel(PERCENTILES[i]) +
+                     " Delay=" + QUOTE + COMMA +
+                     String.format("%.6f", dh.percentile(PERCENTILES[i]) /
+                                           MICROS_PER_SECOND) + NEWLINE);
+      }
+      outfw.append(QUOTE + "Histogram=" + QUOTE + COMMA +
+                   QUOTE + dh.encode() + QUOTE + NEWLINE);
+      for (HostResult host : hosts.values())
+      {
+        outfw.append(QUOTE + "Host Runs " + host.name + "=" + QUOTE +
+                     COMMA + host.runs + NEWLINE);
+        outfw.append(QUOTE + "Host Histogram " + host.name + "=" + QUOTE +
+                     COMMA + QUOTE + host.histogram.encode() + QUOTE +
+                     NEWLINE);
+      }
+      outfw.flush();
+      outfw.close();
+    }
+    catch (Exception e)
+    {
+      System.err.println(e);
+      System.exit(-1);
+    }
+  }
+}
+
+//************************************************************************
+//*                      PACKAGE CLASSES                                 *
+//************************************************************************
+
+/**
+ * The merged delays of one host, or of all hosts
+ */
+class HostResult
+{
+  String name;
+  int runs = 0;
+  DelayHistogram histogram = new DelayHistogram();
+
+  HostResult(String name)
+  {
+    this.name = name;
+  }
+
+  void add(HostResult other)
+  {
+    runs += other.runs;
+    histogram.add(other.histogram);
+  }
+}
@@ -0,0 +1,578 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a GCStress CSV file as a pyramid of pre-aggregated levels for
+ * zooming into long runs. Level 0 holds every sample, and each bucket of
+ * level n covers FANOUT buckets of level n-1. Every bucket keeps its
+ * time span, sample count, min, max and P99 delay and min and max used
+ * memory. The levels are cut into tiles of a fixed number of buckets and
+ * written as JavaScript files next to a static HTML viewer, which loads
+ * only the tiles it shows. Script files instead of JSON work from local
+ * files without a web server.
+ *
+ * The samples are read in one pass and never all held in memory.
+ */
+public class GCTileWriter
+{
+  /**
+   * Private static fields
+   */
+  private static String INPUT_CSV = "gcstress.csv";
+  private static String OUTPUT_DIR = "gcstress-tiles";
+  static final int TILE_SIZE = 256;
+  private static int FANOUT = 4;
+  // enough levels for FANOUT^(MAX_LEVELS-1) samples in one top bucket
+  private static int MAX_LEVELS = 16;
+  private static String VIEWER = "tileviewer.html";
+
+  //************************************************************************
+  //*                      PUBLIC STATIC METHODS                           *
+  //************************************************************************
+
+  public static void main(String[] args)
+  {
+    String opt_input = INPUT_CSV;
+    String opt_output = OUTPUT_DIR;
+    int opt_tile = TILE_SIZE;
+
+    // check command line args
+    for (int i = 0; i < args.length; i++)
+    {
+      if (args[i].equals("-h") || args[i].equals("--help"))
+      {
+        usage();
+        System.exit(0);
+      }
+      if (args[i].startsWith("--input="))
+      {
+        opt_input = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--output="))
+      {
+        opt_output = args[i].substring(args[i].indexOf('=') + 1);
+      }
+      else if (args[i].startsWith("--tile="))
+      {
+        try
+        {
+          opt_tile =
+            Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Bad tile: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+        if (opt_tile < FANOUT)
+        {
+          System.err.println("Bad tile: "+args[i]);
+          usage();
+          System.exit(-1);
+        }
+      }
+      else
+      {
+        System.err.println("Unknown option: "+args[i]);
+        usage();
+        System.exit(-1);
+      }
+    }
+
+    System.out.println("Creating GC Stress Tiles: input="+opt_input+
+                       " output="+opt_output+" tile="+opt_tile);
+    tilesFromCSV(opt_input, opt_output, opt_tile);
+  }
+
+  /**
+   * write the tile pyramid, index and viewer of a CSV input file into an
+   * output directory
+   */
+  public static void tilesFromCSV(String input_file,
+                                  String output_dir,
+                                  int tile_size)
+  {
+    File dir = new File(output_dir);
+    if (!dir.isDirectory() && !dir.mkdirs())
+    {
+      System.err.println("Cannot create "+output_dir);
+      System.exit(-1);
+    }
+    // tiles of an earlier, longer run would be loaded by the new index
+    clearLevels(dir);
+
+    String test = "";
+    String vm = "";
+    String date = "";
+    String host = "";
+    long samples = 0L;
+    long start = 0L;
+    TileLevel levels[] = new TileLevel[MAX_LEVELS];
+    long span = 1L;
+    for (int l = 0; l < MAX_LEVELS; l++)
+    {
+      levels[l] = new TileLevel(l, span, tile_size, dir);
+      span *= FANOUT;
+    }
+
+    try
+    {
+      BufferedReader br = new BufferedReader(new FileReader(input_file));
+      try
+      {
+        String line;
+        while ((line = br.readLine()) != null)
+        {
+          String[] vals = line.split(",");
+          if (vals[0].indexOf('=') != -1 && vals.length == 2)
+          {
+            String key = vals[0].replace("\"", "").replace("=", "");
+            String value = vals[1].replace("\"", "");
+            if (key.equals("Test"))
+            {
+              test = value;
+            }
+            else if (key.equals("VM"))
+            {
+              vm = value;
+            }
+            else if (key.equals("Date"))
+            {
+              date = value;
+            }
+            else if (key.equals("Host"))
+            {
+              host = value;
+            }
+          }
+          else if (vals.length >= 3 && vals[0].indexOf('"') == -1)
+          {
+            long time = Long.parseLong(vals[0]);
+            long mem = Long.parseLong(vals[1]);
+            long delay = Long.parseLong(vals[2]);
+            if (samples == 0)
+            {
+              start = time;
+            }
+            for (TileLevel level : levels)
+            {
+              level.add(time - start, mem, delay);
+            }
+            samples++;
+          }
+          else if (vals.length < 3)
+          {
+            System.err.println("Read error: "+line);
+            System.exit(-1);
+          }
+        }
+      }
+      finally
+      {
+        br.close();
+      }
+      if (samples == 0)
+      {
+        System.err.println("No samples in "+input_file);
+        System.exit(-1);
+      }
+
+      // the top level is the first one that fits in a single tile
+      int top = 0;
+      while (top < MAX_LEVELS - 1 && levels[top].getBuckets() > tile_size)
+      {
+        top++;
+      }
+      for (int l = 0; l <= top; l++)
+      {
+        levels[l].finish();
+      }
+
+      writeIndex(new File(dir, "index.js"), test + ": " + vm, date, host,
+                 start, samples, tile_size, levels, top);
+      copyViewer(new File(dir, "index.html"));
+    }
+    catch (Exception e)
+    {
+      System.err.println("Tile error: "+e);
+      e.printStackTrace();
+      System.exit(-1);
+    }
+    System.out.println("Wrote "+samples+" samples to "+output_dir+
+                       "/index.html");
+  }
+
+  //************************************************************************
+  //*                      PRIVATE STATIC METHODS                          *
+  //************************************************************************
+
+  private static void usage()
+  {
+    System.out.println("Usage: GCTileWriter <options>");
+    System.out.println("  where <options> can be: (default)");
+    System.out.println("  --help           print this message");
+    System.out.println("  --input=<file>   set input csv file (gcstress.csv)");
+    System.out.println("  --output=<dir>   set output directory (gcstress-tiles)");
+    System.out.println("  --tile=<num>     set buckets per tile (256)");
+  }
+
+  /**
+   * delete the L<level>/T<tile>.js files of an earlier run
+   */
+  private static void clearLevels(File dir)
+  {
+    File level_dirs[] = dir.listFiles();
+    if (level_dirs == null)
+    {
+      return;
+    }
+    for (File level_dir : level_dirs)
+    {
+      if (!level_dir.isDirectory() || !level_dir.getName().matches("L\\d+"))
+      {
+        continue;
+      }
+      File tile_files[] = level_dir.listFiles();
+      for (int t = 0; tile_files != null && t < tile_files.length; t++)
+      {
+        if (tile_files[t].getName().matches("T\\d+\\.js") &&
+            !tile_files[t].delete())
+        {
+          System.err.println("Cannot delete "+tile_files[t]);
+          System.exit(-1);
+        }
+      }
+      level_dir.delete();
+    }
+  }
+
+  private static void writeIndex(File file, String title, String date,
+                                 String host, long start, long samples,
+                                 int tile_size, TileLevel levels[], int top)
+    throws IOException
+  {
+    FileWriter outfw = new FileWriter(file);
+    try
+    {
+      outfw.append("gcIndex({\"title\":" + jsonString(title) +
+                   ",\"date\":" + jsonString(date) +
+                   ",\"host\":" + jsonString(host) +
+                   ",\"start\":" + start +
+                   ",\"samples\":" + samples +
+                   ",\"fanout\":" + FANOUT +
+                   ",\"tile\":" + tile_size +
+                   ",\"top\":" + top +
+                   ",\"levels\":[");
+      for (int l = 0; l <= top; l++)
+      {
+        outfw.append(((l > 0) ? "," : "") +
+                     "{\"span\":" + levels[l].getSpan() +
+                     ",\"buckets\":" + levels[l].getBuckets() +
+                     ",\"tiles\":" + levels[l].getTiles() +
+                     ",\"starts\":[");
+        long starts[] = levels[l].getTileStarts();
+        for (int t = 0; t < levels[l].getTiles(); t++)
+        {
+          outfw.append(((t > 0) ? "," : "") + starts[t]);
+        }
+        outfw.append("]}");
+      }
+      outfw.append("]});\n");
+    }
+    finally
+    {
+      outfw.close();
+    }
+  }
+
+  private static void copyViewer(File file) throws IOException
+  {
+    InputStream in = GCTileWriter.class.getResourceAsStream(VIEWER);
+    if (in == null)
+    {
+      throw new IOException("Missing resource "+VIEWER);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try
+    {
+      byte buf[] = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0)
+      {
+        out.write(buf, 0, n);
+      }
+    }
+    finally
+    {
+      in.close();
+      out.close();
+    }
+  }
+
+  private static String jsonString(String str)
+  {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < str.length(); i++)
+    {
+      char c = str.charAt(i);
+      if (c == '"' || c == '\\')
+      {
+        sb.append('\\').append(c);
+      }
+      else if (c < 0x20)
+      {
+        sb.append(String.format("\\u%04x", (int)c));
+      }
+      else
+      {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
+
+//************************************************************************
+//*                      PACKAGE CLASSES                                 *
+//************************************************************************
+
+/**
+ * One level of the tile pyramid: the open bucket and the open tile. Small
+ * buckets keep their delays for an exact P99; large ones use a
+ * DelayHistogram, which is reset only once per bucket.
+ */
+class TileLevel
+{
+  // buckets up to this many samples keep every delay
+  private static int EXACT_SPAN = 1024;
+  // t0, t1, count, min delay, max delay, p99 delay, min mem, max mem
+  private static int FIELDS = 8;
+
+  private int level;
+  private long span;
+  private int tile_size;
+  private File dir;
+
+  // the open bucket
+  private long count = 0L;
+  private long t0;
+  private long t1;
+  private long delay_min;
+  private long delay_max;
+  private long mem_min;
+  private long mem_max;
+  private long values[];
+  private long sorted[];
+  private DelayHistogram histogram;
+
+  // the open tile
+  private long tile[];
+  private int tile_buckets = 0;
+  private int tiles = 0;
+  private long buckets = 0L;
+  // the time of the first bucket of every written tile
+  private long tile_starts[] = new long[16];
+
+  TileLevel(int level, long span, int tile_size, File dir)
+  {
+    this.level = level;
+    this.span = span;
+    this.tile_size = tile_size;
+    this.dir = dir;
+    tile = new long[tile_size * FIELDS];
+    if (span <= EXACT_SPAN)
+    {
+      values = new long[(int)span];
+      sorted = new long[(int)span];
+    }
+    else
+    {
+      histogram = new DelayHistogram();
+    }
+  }
+
+  void add(long time, long mem, long delay) throws IOException
+  {
+    if (count == 0)
+    {
+      t0 = time;
+      delay_min = delay;
+      delay_max = delay;
+      mem_min = mem;
+      mem_max = mem;
+    }
+    else
+    {
+      delay_min = Math.min(delay_min, delay);
+      delay_max = Math.max(delay_max, delay);
+      mem_min = Math.min(mem_min, mem);
+      mem_max = Math.max(mem_max, mem);
+    }
+    t1 = time;
+    if (values != null)
+    {
+      values[(int)count] = delay;
+    }
+    else
+    {
+      histogram.record(delay);
+    }
+    if (++count == span)
+    {
+      closeBucket();
+    }
+  }
+
+  /**
+   * close the last partial bucket and write the last partial tile
+   */
+  void finish() throws IOException
+  {
+    if (count > 0)
+    {
+      closeBucket();
+    }
+    if (tile_buckets > 0)
+    {
+      writeTile();
+    }
+  }
+
+  long getSpan()
+  {
+    return span;
+  }
+
+  /**
+   * the number of buckets, counting the open one
+   */
+  long getBuckets()
+  {
+    return buckets + ((count > 0) ? 1 : 0);
+  }
+
+  int getTiles()
+  {
+    return tiles;
+  }
+
+  /**
+   * the start time of each tile, so a viewer can find tiles by time
+   */
+  long[] getTileStarts()
+  {
+    return tile_starts;
+  }
+
+  //************************************************************************
+  //*                      PRIVATE METHODS                                 *
+  //************************************************************************
+
+  private void closeBucket() throws IOException
+  {
+    long p99;
+    if (values != null)
+    {
+      int n = (int)count;
+      System.arraycopy(values, 0, sorted, 0, n);
+      Arrays.sort(sorted, 0, n);
+      int rank = (int)Math.ceil(0.99d * n) - 1;
+      p99 = sorted[Math.max(0, rank)];
+    }
+    else
+    {
+      p99 = histogram.percentile(99.0d);
+      histogram.reset();
+    }
+    int i = tile_buckets * FIELDS;
+    tile[i] = t0;
+    tile[i + 1] = t1;
+    tile[i + 2] = count;
+    tile[i + 3] = delay_min;
+    tile[i + 4] = delay_max;
+    tile[i + 5] = p99;
+    tile[i + 6] = mem_min;
+    tile[i + 7] = mem_max;
+    count = 0L;
+    buckets++;
+    if (++tile_buckets == tile_size)
+    {
+      writeTile();
+    }
+  }
+
+  /**
+   * write the open tile as a call of gcTile(level, index, base, [...]),
+   * with times relative to the first bucket of the tile. Level 0 buckets
+   * hold one sample, so only time, delay and memory are written.
+   */
+  private void writeTile() throws IOException
+  {
+    File level_dir = new File(dir, "L" + level);
+    if (!level_dir.isDirectory() && !level_dir.mkdirs())
+    {
+      throw new IOException("Cannot create "+level_dir);
+    }
+    long base = tile[0];
+    StringBuilder sb = new StringBuilder();
+    sb.append("gcTile(").append(level).append(',').append(tiles)
+      .append(',').append(base).append(",[");
+    for (int b = 0; b < tile_buckets; b++)
+    {
+      int i = b * FIELDS;
+      if (b > 0)
+      {
+        sb.append(',');
+      }
+      if (span == 1)
+      {
+        sb.append(tile[i] - base).append(',')
+          .append(tile[i + 4]).append(',')
+          .append(tile[i + 7]);
+      }
+      else
+      {
+        sb.append(tile[i] - base).append(',')
+          .append(tile[i + 1] - tile[i]);
+        for (int f = 2; f < FIELDS; f++)
+        {
+          sb.append(',').append(tile[i + f]);
+        }
+      }
+    }
+    sb.append("]);\n");
+    FileWriter outfw = new FileWriter(new File(level_dir, "T" + tiles +
+                                               ".js"));
+    try
+    {
+      outfw.append(sb);
+    }
+    finally
+    {
+      outfw.close();
+    }
+    if (tiles == tile_starts.length)
+    {
+      tile_starts = Arrays.copyOf(tile_starts, tiles * 2);
+    }
+    tile_starts[tiles] = base;
+    tiles++;
+    tile_buckets = 0;
+  }
+}
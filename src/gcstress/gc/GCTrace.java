@@ -0,0 +1,205 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * A pre-generated sequence of GCHammer operations in a memory-mapped file.
+ * Each operation is a cache key and a payload size stored as two ints, so
+ * a trace replays the same workload in any JVM without random number
+ * generation in the hammer loop.
+ *
+ * The file starts with a header of HEADER_INTS ints: the magic number,
+ * the format version, the cache capacity, the max entry size, the number
+ * of operations, the two halves of the seed, and the length in bytes of
+ * the size distribution spec, which follows in UTF-8 padded to whole
+ * ints. Version 1 files have no spec.
+ *
+ * The operations are drawn from the stream GCHammer.randoms() gives the
+ * first hammer, so a trace records what a --seed run does.
+ */
+class GCTrace
+{
+  private static final int MAGIC = 0x47435452;  // "GCTR"
+  private static final int VERSION = 2;
+  private static final int HEADER_INTS = 8;
+  private static final int MAX_OPS =
+    (Integer.MAX_VALUE / 4 - HEADER_INTS) / 2;
+
+  private int capacity;
+  private int maxsize;
+  private int num_ops;
+  private long seed;
+  private String size_spec;
+  private IntBuffer ops;
+
+  private GCTrace(int capacity, int maxsize, int num_ops, long seed,
+                  String size_spec, IntBuffer ops)
+  {
+    this.capacity = capacity;
+    this.maxsize = maxsize;
+    this.num_ops = num_ops;
+    this.seed = seed;
+    this.size_spec = size_spec;
+    this.ops = ops;
+  }
+
+  /**
+   * generate a trace of num_ops operations from the seed and size
+   * distribution and write it to a file
+   */
+  static void write(String file, int capacity, int maxsize,
+                    SizeDistribution sizes, int num_ops, long seed)
+    throws IOException
+  {
+    if (num_ops <= 0 || num_ops > MAX_OPS)
+    {
+      throw new IllegalArgumentException("Trace operations must be 1-"+
+                                         MAX_OPS+": "+num_ops);
+    }
+    byte spec[] = sizes.getSpec().getBytes(StandardCharsets.UTF_8);
+    int spec_ints = (spec.length + 3) / 4;
+    long length = 4L * (HEADER_INTS + spec_ints + 2L * num_ops);
+    if (length > Integer.MAX_VALUE)
+    {
+      throw new IllegalArgumentException("Trace too large: "+num_ops+
+                                         " operations");
+    }
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try
+    {
+      raf.setLength(length);
+      FileChannel fc = raf.getChannel();
+      MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_WRITE, 0,
+                                    length);
+      IntBuffer ib = mbb.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      ib.put(MAGIC);
+      ib.put(VERSION);
+      ib.put(capacity);
+      ib.put(maxsize);
+      ib.put(num_ops);
+      ib.put((int)(seed >>> 32));
+      ib.put((int)seed);
+      ib.put(spec.length);
+      ByteBuffer spec_buf = ByteBuffer.allocate(4 * spec_ints)
+        .order(ByteOrder.LITTLE_ENDIAN);
+      spec_buf.put(spec);
+      spec_buf.rewind();
+      ib.put(spec_buf.asIntBuffer());
+
+      SplittableRandom rand = GCHammer.randoms(seed, 1)[0];
+      for (int i = 0; i < num_ops; i++)
+      {
+        ib.put(rand.nextInt(capacity));
+        ib.put(sizes.sample(rand));
+      }
+      mbb.force();
+    }
+    finally
+    {
+      raf.close();
+    }
+  }
+
+  /**
+   * map a trace file for replay
+   */
+  static GCTrace open(String file) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+      FileChannel fc = raf.getChannel();
+      long length = fc.size();
+      if (length < 4L * HEADER_INTS || length > Integer.MAX_VALUE)
+      {
+        throw new IOException("Bad trace file length: "+file);
+      }
+      MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0,
+                                    length);
+      IntBuffer ib = mbb.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      if (ib.get(0) != MAGIC || ib.get(1) < 1 || ib.get(1) > VERSION)
+      {
+        throw new IOException("Not a GCStress trace file: "+file);
+      }
+      int capacity = ib.get(2);
+      int maxsize = ib.get(3);
+      int num_ops = ib.get(4);
+      long seed = ((long)ib.get(5) << 32) | (ib.get(6) & 0xffffffffL);
+      int spec_length = (ib.get(1) >= 2) ? ib.get(7) : 0;
+      int spec_ints = (spec_length + 3) / 4;
+      if (num_ops <= 0 || spec_length < 0 ||
+          length != 4L * (HEADER_INTS + spec_ints + 2L * num_ops))
+      {
+        throw new IOException("Truncated trace file: "+file);
+      }
+      String size_spec = null;
+      if (spec_length > 0)
+      {
+        byte spec[] = new byte[spec_length];
+        mbb.position(4 * HEADER_INTS);
+        mbb.get(spec);
+        size_spec = new String(spec, StandardCharsets.UTF_8);
+      }
+      ib.position(HEADER_INTS + spec_ints);
+      return new GCTrace(capacity, maxsize, num_ops, seed, size_spec,
+                         ib.slice());
+    }
+    finally
+    {
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  int getCapacity()
+  {
+    return capacity;
+  }
+
+  int getMaxsize()
+  {
+    return maxsize;
+  }
+
+  int getNumOps()
+  {
+    return num_ops;
+  }
+
+  long getSeed()
+  {
+    return seed;
+  }
+
+  /**
+   * the size distribution spec the trace was written with, null for
+   * version 1 files
+   */
+  String getSizeSpec()
+  {
+    return size_spec;
+  }
+
+  /**
+   * the operations as key, size pairs; use absolute gets only, the buffer
+   * is shared by all hammer threads
+   */
+  IntBuffer getOps()
+  {
+    return ops;
+  }
+}
@@ -0,0 +1,108 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+/**
+ * A minimum mutator utilization (MMU) curve. For each window size, the
+ * MMU is the smallest fraction of any window of that size that was not
+ * spent in garbage collection. The GC time comes from the cumulative
+ * collection time recorded with each sample, so the resolution of the
+ * curve is one sample period.
+ */
+class MMUCurve
+{
+  private double window_secs[];
+  private double utilization[];
+
+  private MMUCurve(double window_secs[], double utilization[])
+  {
+    this.window_secs = window_secs;
+    this.utilization = utilization;
+  }
+
+  /**
+   * compute the curve from sample timestamps and cumulative GC times,
+   * both in milliseconds, using windows of 1, 2, 5, 10, 20, 50... samples
+   */
+  static MMUCurve compute(long time_millis[], long gc_millis[], int count)
+  {
+    int num_windows = 0;
+    for (int w = 1; w < count; w = nextWindow(w))
+    {
+      num_windows++;
+    }
+
+    double window_secs[] = new double[num_windows];
+    double utilization[] = new double[num_windows];
+    if (num_windows == 0)
+    {
+      return new MMUCurve(window_secs, utilization);
+    }
+
+    double period = (double)(time_millis[count - 1] - time_millis[0]) /
+                    (double)(count - 1);
+    int index = 0;
+    for (int w = 1; w < count; w = nextWindow(w))
+    {
+      double min_util = 1.0d;
+      for (int i = 0; i + w < count; i++)
+      {
+        long duration = time_millis[i + w] - time_millis[i];
+        long gc = gc_millis[i + w] - gc_millis[i];
+        if (duration <= 0)
+        {
+          continue;
+        }
+        double util = 1.0d - (double)gc / (double)duration;
+        if (util < min_util)
+        {
+          min_util = Math.max(0.0d, util);
+        }
+      }
+      window_secs[index] = period * w / 1000.0d;
+      utilization[index++] = min_util;
+    }
+    return new MMUCurve(window_secs, utilization);
+  }
+
+  int size()
+  {
+    return window_secs.length;
+  }
+
+  double getWindow(int index)
+  {
+    return window_secs[index];
+  }
+
+  double getUtilization(int index)
+  {
+    return utilization[index];
+  }
+
+  /**
+   * step through window sizes 1, 2, 5, 10, 20, 50...
+   */
+  private static int nextWindow(int w)
+  {
+    int decade = 1;
+    while (w >= decade * 10)
+    {
+      decade *= 10;
+    }
+    int digit = w / decade;
+    if (digit < 2)
+    {
+      return 2 * decade;
+    }
+    if (digit < 5)
+    {
+      return 5 * decade;
+    }
+    return 10 * decade;
+  }
+}
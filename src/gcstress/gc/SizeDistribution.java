@@ -0,0 +1,340 @@
+/***************************************************************************
+ * Copyright (c) 2020, PTC Inc. and/or all its affiliates.                 *
+ * All rights reserved. See LICENSE file in the project root for           *
+ * license information.                                                    *
+ ***************************************************************************/
+
+package gcstress.gc;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The distribution of GCHammer payload sizes. Every distribution other
+ * than uniform is turned into bins of sizes at startup, and a bin is
+ * picked with Walker's alias method, so sampling takes two random numbers
+ * (three for bins wider than one size) and allocates nothing.
+ *
+ * Specs, where maxsize is the --maxsize option:
+ *   uniform                  0 to maxsize-1 (default)
+ *   fixed[:size]             always size (maxsize)
+ *   exp[:mean]               exponential, cut at maxsize (maxsize/4)
+ *   pareto[:alpha[:min]]     heavy tail from min, cut at maxsize (1.5:16)
+ *   bimodal[:frac[:large]]   uniform small sizes, and with probability
+ *                            frac a size of large/2 to large
+ *                            (0.0001:4194304)
+ *   empirical:file           lines of "size,weight"
+ */
+class SizeDistribution
+{
+  // max bins for continuous distributions
+  private static final int MAX_BINS = 1024;
+  private static final int EXACT_BINS = 256;
+
+  private String spec;
+  private int maxsize;
+  private boolean uniform;
+
+  // alias tables
+  private double prob[];
+  private int alias[];
+
+  // first size and number of sizes in each bin
+  private int bin_lo[];
+  private int bin_width[];
+  private double mean;
+
+  private SizeDistribution(String spec, int maxsize)
+  {
+    this.spec = spec;
+    this.maxsize = maxsize;
+  }
+
+  /**
+   * parse a distribution spec and build its tables
+   */
+  static SizeDistribution parse(String spec, int maxsize) throws IOException
+  {
+    String parts[] = spec.split(":");
+    String kind = parts[0];
+    SizeDistribution sd = new SizeDistribution(spec, maxsize);
+    if (maxsize <= 0)
+    {
+      throw new IllegalArgumentException("maxsize must be positive");
+    }
+
+    if (kind.equals("uniform"))
+    {
+      sd.uniform = true;
+      sd.mean = (maxsize - 1) / 2.0d;
+    }
+    else if (kind.equals("fixed"))
+    {
+      int size = (parts.length > 1) ? Integer.parseInt(parts[1]) : maxsize;
+      sd.build(new int[] { size }, new int[] { 1 }, new double[] { 1.0d });
+    }
+    else if (kind.equals("exp"))
+    {
+      double mean = (parts.length > 1) ? Double.parseDouble(parts[1])
+                                       : maxsize / 4.0d;
+      if (mean <= 0.0d)
+      {
+        throw new IllegalArgumentException("exp mean must be positive");
+      }
+      sd.buildContinuous(0, maxsize, new CDF() {
+        public double at(double x)
+        {
+          return 1.0d - Math.exp(-x / mean);
+        }
+      });
+    }
+    else if (kind.equals("pareto"))
+    {
+      double alpha = (parts.length > 1) ? Double.parseDouble(parts[1])
+                                        : 1.5d;
+      int min = (parts.length > 2) ? Integer.parseInt(parts[2]) : 16;
+      if (alpha <= 0.0d || min <= 0 || min >= maxsize)
+      {
+        throw new IllegalArgumentException("pareto needs alpha > 0 and " +
+                                           "0 < min < maxsize");
+      }
+      sd.buildContinuous(min, maxsize, new CDF() {
+        public double at(double x)
+        {
+          return 1.0d - Math.pow(min / x, alpha);
+        }
+      });
+    }
+    else if (kind.equals("bimodal"))
+    {
+      double frac = (parts.length > 1) ? Double.parseDouble(parts[1])
+                                       : 0.0001d;
+      int large = (parts.length > 2) ? Integer.parseInt(parts[2]) : 4194304;
+      if (frac < 0.0d || frac > 1.0d || large < 2)
+      {
+        throw new IllegalArgumentException("bimodal needs 0 <= frac <= 1 " +
+                                           "and large >= 2");
+      }
+      sd.build(new int[] { 0, large / 2 },
+               new int[] { maxsize, large - large / 2 + 1 },
+               new double[] { 1.0d - frac, frac });
+    }
+    else if (kind.equals("empirical") && parts.length > 1)
+    {
+      sd.buildEmpirical(spec.substring(spec.indexOf(':') + 1));
+    }
+    else
+    {
+      throw new IllegalArgumentException("Unknown size distribution: " +
+                                         spec);
+    }
+    return sd;
+  }
+
+  /**
+   * draw a payload size
+   */
+  int sample(SplittableRandom rand)
+  {
+    if (uniform)
+    {
+      return rand.nextInt(maxsize);
+    }
+    int bin = rand.nextInt(prob.length);
+    if (rand.nextDouble() >= prob[bin])
+    {
+      bin = alias[bin];
+    }
+    int width = bin_width[bin];
+    return (width == 1) ? bin_lo[bin] : bin_lo[bin] + rand.nextInt(width);
+  }
+
+  String getSpec()
+  {
+    return spec;
+  }
+
+  double getMean()
+  {
+    return mean;
+  }
+
+  //************************************************************************
+  //*                      PRIVATE METHODS                                 *
+  //************************************************************************
+
+  /**
+   * bin the sizes from lo to hi-1: one size per bin for small sizes, then
+   * geometrically wider bins, weighted by the cumulative distribution
+   */
+  private void buildContinuous(int lo, int hi, CDF cdf)
+  {
+    List<Integer> edges = new ArrayList<Integer>();
+    int span = hi - lo;
+    if (span <= MAX_BINS)
+    {
+      for (int s = lo; s <= hi; s++)
+      {
+        edges.add(s);
+      }
+    }
+    else
+    {
+      for (int s = lo; s < lo + EXACT_BINS; s++)
+      {
+        edges.add(s);
+      }
+      double ratio = Math.pow((double)hi / (lo + EXACT_BINS),
+                              1.0d / (MAX_BINS - EXACT_BINS));
+      double edge = lo + EXACT_BINS;
+      int last = lo + EXACT_BINS;
+      edges.add(last);
+      while (last < hi)
+      {
+        edge *= ratio;
+        int next = Math.min(hi, Math.max(last + 1, (int)Math.round(edge)));
+        edges.add(next);
+        last = next;
+      }
+    }
+
+    int bins = edges.size() - 1;
+    int los[] = new int[bins];
+    int widths[] = new int[bins];
+    double weights[] = new double[bins];
+    for (int b = 0; b < bins; b++)
+    {
+      los[b] = edges.get(b);
+      widths[b] = edges.get(b + 1) - los[b];
+      weights[b] = cdf.at(edges.get(b + 1)) - cdf.at(los[b]);
+    }
+    build(los, widths, weights);
+  }
+
+  private void buildEmpirical(String file) throws IOException
+  {
+    List<int[]> sizes = new ArrayList<int[]>();
+    List<Double> weights = new ArrayList<Double>();
+    BufferedReader br = new BufferedReader(new FileReader(file));
+    try
+    {
+      String line;
+      while ((line = br.readLine()) != null)
+      {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#"))
+        {
+          continue;
+        }
+        String vals[] = line.split("[,\\s]+");
+        if (vals.length != 2)
+        {
+          throw new IOException("Bad size histogram line: "+line);
+        }
+        sizes.add(new int[] { Integer.parseInt(vals[0]) });
+        weights.add(Double.valueOf(vals[1]));
+      }
+    }
+    finally
+    {
+      br.close();
+    }
+    int los[] = new int[sizes.size()];
+    int widths[] = new int[sizes.size()];
+    double w[] = new double[sizes.size()];
+    for (int i = 0; i < los.length; i++)
+    {
+      los[i] = sizes.get(i)[0];
+      widths[i] = 1;
+      w[i] = weights.get(i);
+    }
+    build(los, widths, w);
+  }
+
+  /**
+   * build the alias tables with Vose's method
+   */
+  private void build(int los[], int widths[], double weights[])
+  {
+    int n = weights.length;
+    double total = 0.0d;
+    for (int i = 0; i < n; i++)
+    {
+      if (weights[i] < 0.0d || los[i] < 0 || widths[i] < 1)
+      {
+        throw new IllegalArgumentException("Bad size bin: "+los[i]);
+      }
+      total += weights[i];
+    }
+    if (n == 0 || total <= 0.0d)
+    {
+      throw new IllegalArgumentException("Empty size distribution: "+spec);
+    }
+
+    bin_lo = los;
+    bin_width = widths;
+    prob = new double[n];
+    alias = new int[n];
+    double scaled[] = new double[n];
+    int small[] = new int[n];
+    int large[] = new int[n];
+    int num_small = 0;
+    int num_large = 0;
+    mean = 0.0d;
+    for (int i = 0; i < n; i++)
+    {
+      double p = weights[i] / total;
+      mean += p * (los[i] + (widths[i] - 1) / 2.0d);
+      scaled[i] = p * n;
+      if (scaled[i] < 1.0d)
+      {
+        small[num_small++] = i;
+      }
+      else
+      {
+        large[num_large++] = i;
+      }
+    }
+    while (num_small > 0 && num_large > 0)
+    {
+      int s = small[--num_small];
+      int l = large[--num_large];
+      prob[s] = scaled[s];
+      alias[s] = l;
+      scaled[l] = (scaled[l] + scaled[s]) - 1.0d;
+      if (scaled[l] < 1.0d)
+      {
+        small[num_small++] = l;
+      }
+      else
+      {
+        large[num_large++] = l;
+      }
+    }
+    // what is left is 1.0 up to rounding
+    while (num_large > 0)
+    {
+      int l = large[--num_large];
+      prob[l] = 1.0d;
+      alias[l] = l;
+    }
+    while (num_small > 0)
+    {
+      int s = small[--num_small];
+      prob[s] = 1.0d;
+      alias[s] = s;
+    }
+  }
+}
+
+/**
+ * A cumulative distribution function for binning
+ */
+interface CDF
+{
+  double at(double x);
+}